@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.realm.realmtasks.data;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.FileNotFoundException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Random;
+
+import io.realm.DynamicRealm;
+import io.realm.DynamicRealmObject;
+import io.realm.FieldAttribute;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+import io.realm.realmtasks.model.TaskListList;
+import io.realm.realmtasks.model.TasksModule;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the cross-list task queries of the app at 100k tasks with and without the indexes of
+ * {@link SchemaMigration} version 1, and measures the migration which adds them. The Realms are built with the
+ * dynamic API, so both schemas can exist side by side. They hold the complete schema of {@link TasksModule}, so the
+ * migrated Realm can be opened with it. Timings are logged with the tag of this class, e.g.
+ * {@code adb logcat -s TaskQueryBenchmark}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TaskQueryBenchmark {
+
+    private static final String TAG = "TaskQueryBenchmark";
+    private static final String CLASS_TASK = Task.class.getSimpleName();
+    private static final String CLASS_TASK_LIST = TaskList.class.getSimpleName();
+    private static final String CLASS_TASK_LIST_LIST = TaskListList.class.getSimpleName();
+    private static final int TASK_COUNT = 100000;
+    private static final int RUNS = 15;
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    private RealmConfiguration plainConfiguration;
+    private RealmConfiguration indexedConfiguration;
+
+    @Before
+    public void setUp() {
+        Realm.init(InstrumentationRegistry.getTargetContext());
+        plainConfiguration = new RealmConfiguration.Builder().name("benchmark-plain.realm").build();
+        indexedConfiguration = new RealmConfiguration.Builder().name("benchmark-indexed.realm").build();
+        Realm.deleteRealm(plainConfiguration);
+        Realm.deleteRealm(indexedConfiguration);
+    }
+
+    @After
+    public void tearDown() {
+        Realm.deleteRealm(plainConfiguration);
+        Realm.deleteRealm(indexedConfiguration);
+    }
+
+    @Test
+    public void openTasksOfAllLists() {
+        final DynamicRealm plain = populate(plainConfiguration, false);
+        final DynamicRealm indexed = populate(indexedConfiguration, true);
+        try {
+            final long plainTime = median(new OpenTasksQuery(plain));
+            final long indexedTime = median(new OpenTasksQuery(indexed));
+            assertEquals(new OpenTasksQuery(plain).run(), new OpenTasksQuery(indexed).run());
+            report("open tasks of all lists", plainTime, indexedTime);
+        } finally {
+            plain.close();
+            indexed.close();
+        }
+    }
+
+    @Test
+    public void openTasksDueThisWeekSortedByDate() {
+        final DynamicRealm plain = populate(plainConfiguration, false);
+        final DynamicRealm indexed = populate(indexedConfiguration, true);
+        try {
+            final long plainTime = median(new DueTasksQuery(plain));
+            final long indexedTime = median(new DueTasksQuery(indexed));
+            assertEquals(new DueTasksQuery(plain).run(), new DueTasksQuery(indexed).run());
+            report("open tasks due this week, sorted by date", plainTime, indexedTime);
+        } finally {
+            plain.close();
+            indexed.close();
+        }
+    }
+
+    @Test
+    public void migrationAddsIndexes() throws FileNotFoundException {
+        DynamicRealm realm = populate(plainConfiguration, false);
+        final long before = median(new DueTasksQuery(realm));
+        realm.close();
+
+        final RealmConfiguration migratedConfiguration = new RealmConfiguration.Builder()
+                .name(plainConfiguration.getRealmFileName())
+                .modules(new TasksModule())
+                .schemaVersion(SchemaMigration.VERSION)
+                .migration(new SchemaMigration())
+                .build();
+        final long start = System.nanoTime();
+        Realm.migrateRealm(migratedConfiguration);
+        final long migrationTime = System.nanoTime() - start;
+        // Throws if the migrated schema doesn't match the model classes.
+        Realm.getInstance(migratedConfiguration).close();
+
+        realm = DynamicRealm.getInstance(migratedConfiguration);
+        try {
+            final RealmObjectSchema schema = realm.getSchema().get(CLASS_TASK);
+            assertTrue(schema.hasIndex(Task.FIELD_COMPLETED));
+            assertTrue(schema.hasIndex(Task.FIELD_DATE));
+            assertEquals(SchemaMigration.VERSION, realm.getVersion());
+            final long after = median(new DueTasksQuery(realm));
+            Log.i(TAG, String.format("migration of %d tasks: %.1f ms", TASK_COUNT, migrationTime / 1e6));
+            report("open tasks due this week, before and after the migration", before, after);
+        } finally {
+            realm.close();
+        }
+    }
+
+    /**
+     * Creates {@link #TASK_COUNT} tasks in a fresh Realm, a quarter of them open and about half of them with a due
+     * date within a year. The same seed gives both Realms the same tasks.
+     */
+    private static DynamicRealm populate(RealmConfiguration configuration, boolean indexed) {
+        final DynamicRealm realm = DynamicRealm.getInstance(configuration);
+        final Random random = new Random(42);
+        final long now = System.currentTimeMillis();
+        realm.beginTransaction();
+        try {
+            createSchema(realm.getSchema(), indexed);
+            for (int i = 0; i < TASK_COUNT; i++) {
+                final DynamicRealmObject task = realm.createObject(CLASS_TASK);
+                task.setString(Task.FIELD_ID, "task-" + i);
+                task.setString(Task.FIELD_TEXT, "Task " + i);
+                task.setBoolean(Task.FIELD_COMPLETED, random.nextInt(4) != 0);
+                if (random.nextBoolean()) {
+                    task.setDate(Task.FIELD_DATE, new Date(now + random.nextInt(365) * DAY));
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+        }
+        return realm;
+    }
+
+    /**
+     * Creates the schema of {@link TasksModule}, as of version 1 of {@link SchemaMigration} if {@code indexed} and as
+     * of version 0 otherwise.
+     */
+    private static void createSchema(RealmSchema schema, boolean indexed) {
+        final FieldAttribute[] indexedAttributes = indexed
+                ? new FieldAttribute[] {FieldAttribute.INDEXED}
+                : new FieldAttribute[0];
+        final RealmObjectSchema task = schema.create(CLASS_TASK)
+                .addField(Task.FIELD_ID, String.class, FieldAttribute.INDEXED)
+                .addField(Task.FIELD_TEXT, String.class, FieldAttribute.REQUIRED)
+                .addField(Task.FIELD_COMPLETED, boolean.class, indexedAttributes)
+                .addField(Task.FIELD_DATE, Date.class, indexedAttributes)
+                .addField(Task.FIELD_COMPLETED_AT, Date.class)
+                .addField(Task.FIELD_SORT_KEY, String.class)
+                .addField(Task.FIELD_DELETED, boolean.class, FieldAttribute.INDEXED)
+                .addField(Task.FIELD_DELETED_AT, Date.class);
+        final RealmObjectSchema taskList = schema.create(CLASS_TASK_LIST)
+                .addField(TaskList.FIELD_ID, String.class, FieldAttribute.PRIMARY_KEY, FieldAttribute.REQUIRED)
+                .addField(TaskList.FIELD_TEXT, String.class, FieldAttribute.REQUIRED)
+                .addField(TaskList.FIELD_COMPLETED, boolean.class)
+                .addRealmListField(TaskList.FIELD_ITEMS, task)
+                .addField(TaskList.FIELD_SORT_KEY, String.class)
+                .addField(TaskList.FIELD_DELETED, boolean.class, FieldAttribute.INDEXED)
+                .addField(TaskList.FIELD_DELETED_AT, Date.class)
+                .addField(TaskList.FIELD_INCOMPLETE_COUNT, long.class)
+                .addField(TaskList.FIELD_TOTAL_COUNT, long.class)
+                .addField(TaskList.FIELD_OLDEST_OPEN_DATE, Date.class);
+        schema.create(CLASS_TASK_LIST_LIST)
+                .addField("id", long.class, FieldAttribute.PRIMARY_KEY)
+                .addRealmListField("items", taskList);
+    }
+
+    private static long median(Query query) {
+        // The first run warms up the caches and isn't counted.
+        query.run();
+        final long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            final long start = System.nanoTime();
+            query.run();
+            times[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(times);
+        return times[RUNS / 2];
+    }
+
+    private static void report(String name, long plainTime, long indexedTime) {
+        Log.i(TAG, String.format("%s: %.2f ms without indexes, %.2f ms with indexes (%.1fx)",
+                name, plainTime / 1e6, indexedTime / 1e6, (double) plainTime / Math.max(1, indexedTime)));
+    }
+
+    private interface Query {
+        /**
+         * Runs the query to completion and returns the number of results.
+         */
+        long run();
+    }
+
+    private static class OpenTasksQuery implements Query {
+        private final DynamicRealm realm;
+
+        OpenTasksQuery(DynamicRealm realm) {
+            this.realm = realm;
+        }
+
+        @Override
+        public long run() {
+            return realm.where(CLASS_TASK)
+                    .equalTo(Task.FIELD_COMPLETED, false)
+                    .equalTo(Task.FIELD_DELETED, false)
+                    .count();
+        }
+    }
+
+    private static class DueTasksQuery implements Query {
+        private final DynamicRealm realm;
+        private final Date from = new Date();
+        private final Date to = new Date(from.getTime() + 7 * DAY);
+
+        DueTasksQuery(DynamicRealm realm) {
+            this.realm = realm;
+        }
+
+        @Override
+        public long run() {
+            return realm.where(CLASS_TASK)
+                    .between(Task.FIELD_DATE, from, to)
+                    .equalTo(Task.FIELD_COMPLETED, false)
+                    .findAllSorted(Task.FIELD_DATE)
+                    .size();
+        }
+    }
+}
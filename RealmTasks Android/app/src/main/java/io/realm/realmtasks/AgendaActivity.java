@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.view.MenuItem;
+
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmResults;
+import io.realm.realmtasks.list.AgendaAdapter;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+import io.realm.realmtasks.view.RecyclerViewWithEmptyViewSupport;
+
+/**
+ * Shows the open tasks of all lists which have a due date: overdue, today, this week and later.
+ */
+public class AgendaActivity extends AppCompatActivity {
+
+    private Realm realm;
+    private AgendaAdapter adapter;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_agenda);
+
+        final RecyclerViewWithEmptyViewSupport recyclerView = findViewById(R.id.recycler_view);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setEmptyView(findViewById(R.id.empty_view));
+
+        realm = Realm.getDefaultInstance();
+        adapter = new AgendaAdapter(this, realm);
+        adapter.setOnTaskClickListener(new AgendaAdapter.OnTaskClickListener() {
+            @Override
+            public void onTaskClicked(Task task) {
+                final RealmResults<TaskList> lists = task.getLists();
+                if (lists.isEmpty()) {
+                    return;
+                }
+                final Intent intent = new Intent(AgendaActivity.this, TaskActivity.class);
+                intent.putExtra(TaskActivity.EXTRA_LIST_ID, lists.first().getId());
+                startActivity(intent);
+            }
+        });
+        // The recycler view shows skeleton rows until the tasks are loaded.
+        adapter.getTasks().addChangeListener(new RealmChangeListener<RealmResults<Task>>() {
+            @Override
+            public void onChange(RealmResults<Task> tasks) {
+                tasks.removeChangeListener(this);
+                recyclerView.setAdapter(adapter);
+            }
+        });
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        final RecyclerViewWithEmptyViewSupport recyclerView = findViewById(R.id.recycler_view);
+        recyclerView.setAdapter(null);
+        realm.removeAllChangeListeners();
+        realm.close();
+        realm = null;
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -23,6 +23,7 @@ import com.facebook.FacebookSdk;
 import io.realm.Realm;
 import io.realm.log.LogLevel;
 import io.realm.log.RealmLog;
+import io.realm.realmtasks.list.RowPool;
 
 public class RealmTasksApplication extends Application {
 
@@ -35,5 +36,14 @@ public class RealmTasksApplication extends Application {
     public void onCreate() {
         super.onCreate();
         Realm.init(this);
+        RowPool.getInstance(this).prewarm();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        if (level >= TRIM_MEMORY_UI_HIDDEN) {
+            UserManager.compactIfIdle();
+        }
     }
 }
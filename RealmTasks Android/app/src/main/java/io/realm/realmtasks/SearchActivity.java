@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.MenuItem;
+import android.widget.EditText;
+
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.realmtasks.data.TaskSearch;
+import io.realm.realmtasks.list.SearchResultAdapter;
+
+/**
+ * Searches the tasks of all lists while the query is being typed.
+ */
+public class SearchActivity extends AppCompatActivity {
+
+    private SearchResultAdapter adapter;
+    private TaskSearch taskSearch;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_search);
+
+        adapter = new SearchResultAdapter(new SearchResultAdapter.OnResultClickListener() {
+            @Override
+            public void onResultClicked(TaskSearch.SearchResult result) {
+                if (result.getTaskListId() == null) {
+                    return;
+                }
+                final Intent intent = new Intent(SearchActivity.this, TaskActivity.class);
+                intent.putExtra(TaskActivity.EXTRA_LIST_ID, result.getTaskListId());
+                startActivity(intent);
+            }
+        });
+        final RecyclerView recyclerView = findViewById(R.id.recycler_view);
+        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        recyclerView.setAdapter(adapter);
+
+        taskSearch = new TaskSearch(Realm.getDefaultConfiguration(), UserManager.getSearchConfiguration(),
+                new TaskSearch.Listener() {
+                    @Override
+                    public void onSearchStarted(String query) {
+                        adapter.clear();
+                    }
+
+                    @Override
+                    public void onResultsFound(List<TaskSearch.SearchResult> results) {
+                        adapter.addAll(results);
+                    }
+                });
+
+        final EditText queryText = findViewById(R.id.search_query);
+        queryText.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                taskSearch.search(s.toString());
+            }
+        });
+        if (getSupportActionBar() != null) {
+            getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        taskSearch.close();
+        super.onDestroy();
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == android.R.id.home) {
+            finish();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
@@ -47,6 +47,7 @@ import io.realm.Realm;
 import io.realm.SyncUser;
 import io.realm.realmtasks.auth.facebook.FacebookAuth;
 import io.realm.realmtasks.auth.google.GoogleAuth;
+import io.realm.realmtasks.data.SortKey;
 import io.realm.realmtasks.model.TaskList;
 import io.realm.realmtasks.model.TaskListList;
 
@@ -257,6 +258,7 @@ public class SignInActivity extends AppCompatActivity implements SyncUser.Callba
                         final TaskList taskList = new TaskList();
                         taskList.setId(RealmTasksApplication.DEFAULT_LIST_ID);
                         taskList.setText(RealmTasksApplication.DEFAULT_LIST_NAME);
+                        taskList.setSortKey(SortKey.between(null, null));
                         taskListList.getItems().add(taskList);
                     }
                 }
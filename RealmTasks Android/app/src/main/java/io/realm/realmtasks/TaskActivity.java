@@ -18,14 +18,17 @@ package io.realm.realmtasks;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 
 import io.realm.Realm;
 import io.realm.RealmChangeListener;
+import io.realm.realmtasks.list.CommonAdapter;
 import io.realm.realmtasks.list.ItemViewHolder;
 import io.realm.realmtasks.list.TaskAdapter;
 import io.realm.realmtasks.list.TouchHelper;
@@ -61,34 +64,35 @@ public class TaskActivity extends AppCompatActivity {
             throw new IllegalArgumentException(EXTRA_LIST_ID + " required");
         }
         id = intent.getStringExtra(EXTRA_LIST_ID);
-    }
 
-    @Override
-    protected void onStart() {
-        super.onStart();
-        if (touchHelper != null) {
-            touchHelper.attachToRecyclerView(null);
-        }
-        adapter = null;
+        // Everything is queried asynchronously and kept until the activity is destroyed, the recycler view shows
+        // skeleton rows until the tasks are loaded.
         realm = Realm.getDefaultInstance();
-        taskList = realm.where(TaskList.class).equalTo(TaskList.FIELD_ID, id).findFirstAsync();
+        adapter = new TaskAdapter(this, realm, id);
+        adapter.setOnLoadedListener(new CommonAdapter.OnLoadedListener() {
+            @Override
+            public void onLoaded() {
+                touchHelper = new TouchHelper(new Callback(), adapter);
+                touchHelper.attachToRecyclerView(recyclerView);
+            }
+        });
+        taskList = adapter.getTaskList();
         taskList.addChangeListener(new RealmChangeListener<TaskList>() {
             @Override
             public void onChange(TaskList taskList) {
                 updateList(taskList);
             }
         });
-        setTitle("Loading");
+        if (taskList.isLoaded()) {
+            updateList(taskList);
+        } else {
+            setTitle("Loading");
+        }
     }
 
     private void updateList(TaskList taskList) {
         if (taskList.isValid()) {
             setTitle(taskList.getText());
-            if (adapter == null) {
-                adapter = new TaskAdapter(TaskActivity.this, taskList.getItems());
-                touchHelper = new TouchHelper(new Callback(), adapter);
-                touchHelper.attachToRecyclerView(recyclerView);
-            }
         } else {
             setTitle(getString(R.string.title_deleted));
         }
@@ -96,14 +100,8 @@ public class TaskActivity extends AppCompatActivity {
 
     @Override
     protected void onStop() {
-        if (adapter != null) {
-            touchHelper.attachToRecyclerView(null);
-            adapter = null;
-        }
-        realm.removeAllChangeListeners();
-        realm.close();
-        realm = null;
         if (logoutAfterClose) {
+            closeRealm();
             /*
              * We need call logout() here since onCreate() of the next Activity is already
              * executed before reaching here.
@@ -115,6 +113,27 @@ public class TaskActivity extends AppCompatActivity {
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        closeRealm();
+        super.onDestroy();
+    }
+
+    private void closeRealm() {
+        if (realm == null) {
+            return;
+        }
+        taskList.removeAllChangeListeners();
+        adapter.setOnLoadedListener(null);
+        if (touchHelper != null) {
+            touchHelper.attachToRecyclerView(null);
+            touchHelper = null;
+        }
+        realm.removeAllChangeListeners();
+        realm.close();
+        realm = null;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_tasks, menu);
@@ -134,6 +153,14 @@ public class TaskActivity extends AppCompatActivity {
                 }
                 return true;
 
+            case R.id.action_search:
+                startActivity(new Intent(TaskActivity.this, SearchActivity.class));
+                return true;
+
+            case R.id.action_agenda:
+                startActivity(new Intent(TaskActivity.this, AgendaActivity.class));
+                return true;
+
             case R.id.action_logout:
                 Intent intent = new Intent(TaskActivity.this, SignInActivity.class);
                 intent.setAction(SignInActivity.ACTION_IGNORE_CURRENT_USER);
@@ -153,7 +180,12 @@ public class TaskActivity extends AppCompatActivity {
         public void onMoved(RecyclerView recyclerView, ItemViewHolder from, ItemViewHolder to) {
             final int fromPosition = from.getAdapterPosition();
             final int toPosition = to.getAdapterPosition();
-            adapter.onItemMoved(fromPosition, toPosition);
+            adapter.onItemDragged(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onDropped(ItemViewHolder viewHolder) {
+            adapter.finishDrag();
         }
 
         @Override
@@ -165,6 +197,14 @@ public class TaskActivity extends AppCompatActivity {
         public void onDismissed(ItemViewHolder viewHolder) {
             final int position = viewHolder.getAdapterPosition();
             adapter.onItemDismissed(position);
+            Snackbar.make(recyclerView, R.string.task_deleted, Snackbar.LENGTH_LONG)
+                    .setAction(R.string.undo, new View.OnClickListener() {
+                        @Override
+                        public void onClick(View view) {
+                            adapter.onItemRestored();
+                        }
+                    })
+                    .show();
         }
 
         @Override
@@ -178,8 +218,8 @@ public class TaskActivity extends AppCompatActivity {
         }
 
         @Override
-        public void onChanged(ItemViewHolder viewHolder) {
-            adapter.onItemChanged(viewHolder);
+        public void onChanged(String id, String text) {
+            adapter.onItemChanged(id, text);
         }
 
         @Override
@@ -187,11 +227,6 @@ public class TaskActivity extends AppCompatActivity {
             adapter.onItemAdded();
         }
 
-        @Override
-        public void onReverted(boolean shouldUpdateUI) {
-            adapter.onItemReverted();
-        }
-
         @Override
         public void onExit() {
             finish();
@@ -18,24 +18,20 @@ package io.realm.realmtasks;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.design.widget.Snackbar;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.Menu;
 import android.view.MenuItem;
-
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import android.view.View;
 
 import io.realm.Realm;
-import io.realm.RealmChangeListener;
-import io.realm.RealmResults;
+import io.realm.realmtasks.list.CommonAdapter;
 import io.realm.realmtasks.list.ItemViewHolder;
 import io.realm.realmtasks.list.TaskListAdapter;
 import io.realm.realmtasks.list.TouchHelper;
 import io.realm.realmtasks.model.TaskList;
-import io.realm.realmtasks.model.TaskListList;
 import io.realm.realmtasks.view.RecyclerViewWithEmptyViewSupport;
 
 /**
@@ -47,7 +43,6 @@ public class TaskListActivity extends AppCompatActivity {
     private RecyclerViewWithEmptyViewSupport recyclerView;
     private TaskListAdapter adapter;
     private TouchHelper touchHelper;
-    private RealmResults<TaskListList> list;
     private boolean logoutAfterClose;
 
     @Override
@@ -57,64 +52,24 @@ public class TaskListActivity extends AppCompatActivity {
         recyclerView = findViewById(R.id.recycler_view);
         recyclerView.setLayoutManager(new LinearLayoutManager(this));
         recyclerView.setEmptyView(findViewById(R.id.empty_view));
-    }
 
-    @Override
-    protected void onStart() {
-        super.onStart();
-        if (touchHelper != null) {
-            touchHelper.attachToRecyclerView(null);
-        }
-        adapter = null;
+        // Everything is queried asynchronously and kept until the activity is destroyed, the recycler view shows
+        // skeleton rows until the lists are loaded.
         realm = Realm.getDefaultInstance();
-        list = realm.where(TaskListList.class).findAll();
-        list.addChangeListener(new RealmChangeListener<RealmResults<TaskListList>>() {
+        adapter = new TaskListAdapter(this, realm);
+        adapter.setOnLoadedListener(new CommonAdapter.OnLoadedListener() {
             @Override
-            public void onChange(RealmResults<TaskListList> results) {
-                updateList(results);
+            public void onLoaded() {
+                touchHelper = new TouchHelper(new Callback(), adapter);
+                touchHelper.attachToRecyclerView(recyclerView);
             }
         });
-        updateList(list);
-    }
-
-    private void updateList(RealmResults<TaskListList> results) {
-
-        if (results.size() > 0 && adapter == null) {
-
-            // The default list is being added on all devices, so according to the merge rules the default list might
-            // be added multiple times. This is just a temporary fix. Proper ordered sets are being tracked here:
-            // https://github.com/realm/realm-core/issues/1206
-            realm.beginTransaction();
-            Set<String> seen = new HashSet<>();
-            Iterator<TaskList> it = results.first().getItems().iterator();
-            while (it.hasNext()) {
-                TaskList list = it.next();
-                String id = list.getId();
-                if (seen.contains(id)) {
-                    it.remove();
-                }
-                seen.add(id);
-            }
-            realm.commitTransaction();
-
-            // Create Adapter
-            adapter = new TaskListAdapter(TaskListActivity.this, results.first().getItems());
-            touchHelper = new TouchHelper(new Callback(), adapter);
-            touchHelper.attachToRecyclerView(recyclerView);
-        }
     }
 
     @Override
     protected void onStop() {
-        list.removeAllChangeListeners();
-        if (adapter != null) {
-            touchHelper.attachToRecyclerView(null);
-            adapter = null;
-        }
-        realm.removeAllChangeListeners();
-        realm.close();
-        realm = null;
         if (logoutAfterClose) {
+            closeRealm();
             /*
              * We need call logout() here since onCreate() of the next Activity is already
              * executed before reaching here.
@@ -125,6 +80,26 @@ public class TaskListActivity extends AppCompatActivity {
         super.onStop();
     }
 
+    @Override
+    protected void onDestroy() {
+        closeRealm();
+        super.onDestroy();
+    }
+
+    private void closeRealm() {
+        if (realm == null) {
+            return;
+        }
+        adapter.setOnLoadedListener(null);
+        if (touchHelper != null) {
+            touchHelper.attachToRecyclerView(null);
+            touchHelper = null;
+        }
+        realm.removeAllChangeListeners();
+        realm.close();
+        realm = null;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_tasks, menu);
@@ -140,6 +115,14 @@ public class TaskListActivity extends AppCompatActivity {
                 }
                 return true;
 
+            case R.id.action_search:
+                startActivity(new Intent(TaskListActivity.this, SearchActivity.class));
+                return true;
+
+            case R.id.action_agenda:
+                startActivity(new Intent(TaskListActivity.this, AgendaActivity.class));
+                return true;
+
             case R.id.action_logout:
                 Intent intent = new Intent(TaskListActivity.this, SignInActivity.class);
                 intent.setAction(SignInActivity.ACTION_IGNORE_CURRENT_USER);
@@ -159,7 +142,12 @@ public class TaskListActivity extends AppCompatActivity {
         public void onMoved(RecyclerView recyclerView, ItemViewHolder from, ItemViewHolder to) {
             final int fromPosition = from.getAdapterPosition();
             final int toPosition = to.getAdapterPosition();
-            adapter.onItemMoved(fromPosition, toPosition);
+            adapter.onItemDragged(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onDropped(ItemViewHolder viewHolder) {
+            adapter.finishDrag();
         }
 
         @Override
@@ -171,6 +159,14 @@ public class TaskListActivity extends AppCompatActivity {
         public void onDismissed(ItemViewHolder viewHolder) {
             final int position = viewHolder.getAdapterPosition();
             adapter.onItemDismissed(position);
+            Snackbar.make(recyclerView, R.string.list_deleted, Snackbar.LENGTH_LONG)
+                    .setAction(R.string.undo, new View.OnClickListener() {
+                        @Override
+                        public void onClick(View view) {
+                            adapter.onItemRestored();
+                        }
+                    })
+                    .show();
         }
 
         @Override
@@ -190,8 +186,8 @@ public class TaskListActivity extends AppCompatActivity {
         }
 
         @Override
-        public void onChanged(ItemViewHolder viewHolder) {
-            adapter.onItemChanged(viewHolder);
+        public void onChanged(String id, String text) {
+            adapter.onItemChanged(id, text);
         }
 
         @Override
@@ -199,11 +195,6 @@ public class TaskListActivity extends AppCompatActivity {
             adapter.onItemAdded();
         }
 
-        @Override
-        public void onReverted(boolean shouldUpdateUI) {
-            adapter.onItemReverted();
-        }
-
         @Override
         public void onExit() {
         }
@@ -18,9 +18,24 @@ package io.realm.realmtasks;
 
 import com.facebook.login.LoginManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import io.realm.Realm;
+import io.realm.RealmConfiguration;
 import io.realm.SyncConfiguration;
 import io.realm.SyncUser;
+import io.realm.realmtasks.data.CompactionPolicy;
+import io.realm.realmtasks.data.RealmWriter;
+import io.realm.realmtasks.data.SchemaMigration;
+import io.realm.realmtasks.data.SearchIndexer;
+import io.realm.realmtasks.data.SyncRepairer;
+import io.realm.realmtasks.data.TaskArchiver;
+import io.realm.realmtasks.data.TombstonePurger;
+import io.realm.realmtasks.model.ArchiveModule;
+import io.realm.realmtasks.model.SearchModule;
+import io.realm.realmtasks.model.TasksModule;
 
 public class UserManager {
     // Supported authentication mode
@@ -30,11 +45,23 @@ public class UserManager {
         GOOGLE
     }
     private static AUTH_MODE mode = AUTH_MODE.PASSWORD; // default
+    private static SyncRepairer syncRepairer;
+    private static TombstonePurger tombstonePurger;
+    private static TaskArchiver taskArchiver;
+    private static SearchIndexer searchIndexer;
+    private static CompactionPolicy compactionPolicy = CompactionPolicy.DEFAULT;
 
     public static void setAuthMode(AUTH_MODE m) {
         mode = m;
     }
 
+    /**
+     * Takes effect the next time a user becomes active.
+     */
+    public static void setCompactionPolicy(CompactionPolicy policy) {
+        compactionPolicy = policy;
+    }
+
     public static void logoutActiveUser() {
         switch (mode) {
             case PASSWORD: {
@@ -50,12 +77,119 @@ public class UserManager {
                 break;
             }
         }
+        stopBackgroundWork();
         SyncUser.currentUser().logout();
     }
 
     // Configure Realm for the current active user
     public static void setActiveUser(SyncUser user) {
-        SyncConfiguration defaultConfig = new SyncConfiguration.Builder(user, RealmTasksApplication.REALM_URL).build();
+        // Synced Realms can't take a migration, Realm applies the additive steps by itself, see SchemaMigration.
+        final SyncConfiguration defaultConfig = new SyncConfiguration.Builder(user, RealmTasksApplication.REALM_URL)
+                .modules(new TasksModule())
+                .schemaVersion(SchemaMigration.VERSION)
+                .compactOnLaunch(compactionPolicy)
+                .build();
         Realm.setDefaultConfiguration(defaultConfig);
+        stopBackgroundWork();
+        final long sizeBefore = CompactionPolicy.getFileSize(defaultConfig);
+        RealmWriter.setDefaultConfiguration(defaultConfig);
+        RealmWriter.getDefaultInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                // The writer has opened the Realm at this point, so compaction on launch is done.
+                CompactionPolicy.reportFileSize(defaultConfig, sizeBefore);
+            }
+        });
+        syncRepairer = new SyncRepairer(RealmWriter.getDefaultInstance());
+        syncRepairer.start();
+        tombstonePurger = new TombstonePurger(RealmWriter.getDefaultInstance());
+        tombstonePurger.start();
+        // Old completed tasks are kept in a local Realm per user, the synced Realm only holds the recent ones.
+        RealmConfiguration archiveConfig = new RealmConfiguration.Builder()
+                .name("archive-" + user.getIdentity() + ".realm")
+                .modules(new ArchiveModule())
+                .schemaVersion(SchemaMigration.VERSION)
+                .migration(new SchemaMigration())
+                .compactOnLaunch(compactionPolicy)
+                .build();
+        taskArchiver = new TaskArchiver(RealmWriter.getDefaultInstance(), archiveConfig, TaskArchiver.DEFAULT_MAX_AGE);
+        taskArchiver.start();
+        // The search index is derived data, so it's local and can be rebuilt from the tasks at any time.
+        RealmConfiguration searchConfig = new RealmConfiguration.Builder()
+                .name("search-" + user.getIdentity() + ".realm")
+                .modules(new SearchModule())
+                .schemaVersion(SchemaMigration.VERSION)
+                .migration(new SchemaMigration())
+                .compactOnLaunch(compactionPolicy)
+                .build();
+        searchIndexer = new SearchIndexer(RealmWriter.getDefaultInstance(), searchConfig);
+        searchIndexer.start();
+    }
+
+    /**
+     * Gives access to the archived tasks of the active user.
+     */
+    public static TaskArchiver getTaskArchiver() {
+        return taskArchiver;
+    }
+
+    /**
+     * Configuration of the search index of the active user, see {@link io.realm.realmtasks.data.TaskSearch}.
+     */
+    public static RealmConfiguration getSearchConfiguration() {
+        return searchIndexer.getSearchConfiguration();
+    }
+
+    /**
+     * Compacts the local Realms of the active user which aren't open, e.g. after the app has been hidden. Runs on the
+     * writer thread, after the archiver is done with the archive Realm. The synced Realm is kept open by the workers,
+     * it is compacted on launch only.
+     */
+    public static void compactIfIdle() {
+        if (taskArchiver == null || searchIndexer == null) {
+            return;
+        }
+        postIdleCompaction(Arrays.asList(
+                taskArchiver.getArchiveConfiguration(), searchIndexer.getSearchConfiguration()));
+    }
+
+    private static void postIdleCompaction(final List<RealmConfiguration> configurations) {
+        if (configurations.isEmpty()) {
+            return;
+        }
+        final CompactionPolicy policy = compactionPolicy;
+        RealmWriter.getDefaultInstance().post(new Runnable() {
+            @Override
+            public void run() {
+                for (RealmConfiguration configuration : configurations) {
+                    policy.compactIfIdle(configuration);
+                }
+            }
+        });
+    }
+
+    private static void stopBackgroundWork() {
+        if (syncRepairer != null) {
+            syncRepairer.stop();
+            syncRepairer = null;
+        }
+        if (tombstonePurger != null) {
+            tombstonePurger.stop();
+            tombstonePurger = null;
+        }
+        final List<RealmConfiguration> localConfigs = new ArrayList<>();
+        if (taskArchiver != null) {
+            taskArchiver.stop();
+            localConfigs.add(taskArchiver.getArchiveConfiguration());
+            taskArchiver = null;
+        }
+        if (searchIndexer != null) {
+            searchIndexer.stop();
+            localConfigs.add(searchIndexer.getSearchConfiguration());
+            searchIndexer = null;
+        }
+        // The workers close their Realms on the writer thread first, so they are compacted once they are idle.
+        postIdleCompaction(localConfigs);
+        RealmWriter.closeDefaultInstance();
     }
 }
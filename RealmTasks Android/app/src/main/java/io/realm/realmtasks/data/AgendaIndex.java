@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.realmtasks.model.Task;
+
+/**
+ * Splits open tasks sorted by due date into the sections of the agenda. The boundaries are positions in the sorted
+ * results, they are kept up to date from the change sets instead of searching the results again, so a change costs
+ * as much as the number of changed tasks and not the number of dated tasks.
+ */
+public class AgendaIndex {
+
+    public static final int OVERDUE = 0;
+    public static final int TODAY = 1;
+    public static final int THIS_WEEK = 2;
+    public static final int LATER = 3;
+    public static final int SECTION_COUNT = 4;
+
+    // starts[k] is the first due date of section k, the overdue section has no start.
+    private final long[] starts = new long[SECTION_COUNT];
+    // first[k] is the position of the first task of section k, first[SECTION_COUNT] the number of tasks.
+    private final int[] first = new int[SECTION_COUNT + 1];
+
+    public AgendaIndex() {
+        setNow(System.currentTimeMillis());
+    }
+
+    public AgendaIndex(AgendaIndex other) {
+        System.arraycopy(other.starts, 0, starts, 0, starts.length);
+        System.arraycopy(other.first, 0, first, 0, first.length);
+    }
+
+    /**
+     * Moves the sections to the day of {@code now}. Call {@link #rebuild(List)} afterwards.
+     */
+    public void setNow(long now) {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(now);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        starts[OVERDUE] = Long.MIN_VALUE;
+        starts[TODAY] = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_YEAR, 1);
+        starts[THIS_WEEK] = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_YEAR, 6);
+        starts[LATER] = calendar.getTimeInMillis();
+    }
+
+    /**
+     * Milliseconds until today turns into overdue, the sections must be moved then.
+     */
+    public long millisUntilNextDay(long now) {
+        return Math.max(0, starts[THIS_WEEK] - now);
+    }
+
+    public int sectionOf(Date date) {
+        final long time = date.getTime();
+        int section = OVERDUE;
+        while (section < LATER && time >= starts[section + 1]) {
+            section++;
+        }
+        return section;
+    }
+
+    public int getFirst(int section) {
+        return first[section];
+    }
+
+    public int getCount(int section) {
+        return first[section + 1] - first[section];
+    }
+
+    public int getSize() {
+        return first[SECTION_COUNT];
+    }
+
+    /**
+     * Finds the section of the given position.
+     */
+    public int sectionAt(int position) {
+        int section = OVERDUE;
+        while (section < LATER && position >= first[section + 1]) {
+            section++;
+        }
+        return section;
+    }
+
+    /**
+     * Finds all boundaries with a binary search each, for the first results and after the day changed.
+     */
+    public void rebuild(List<Task> tasks) {
+        first[OVERDUE] = 0;
+        for (int section = TODAY; section < SECTION_COUNT; section++) {
+            first[section] = lowerBound(tasks, first[section - 1], starts[section]);
+        }
+        first[SECTION_COUNT] = tasks.size();
+    }
+
+    /**
+     * Shifts the boundaries by the deletions and insertions of a change set. Returns {@code false} if a task changed
+     * its section without changing its position, the boundaries have been rebuilt in that case.
+     */
+    public boolean apply(List<Task> tasks, OrderedCollectionChangeSet changeSet) {
+        return apply(tasks, changeSet.getDeletions(), changeSet.getInsertions());
+    }
+
+    boolean apply(List<Task> tasks, int[] deletions, int[] insertions) {
+        // Deletions are positions in the old results, going backwards keeps the boundaries comparable to them.
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            final int position = deletions[i];
+            for (int boundary = TODAY; boundary <= SECTION_COUNT; boundary++) {
+                if (position < first[boundary]) {
+                    first[boundary]--;
+                }
+            }
+        }
+        for (int position : insertions) {
+            final int section = sectionOf(tasks.get(position).getDate());
+            for (int boundary = section + 1; boundary <= SECTION_COUNT; boundary++) {
+                first[boundary]++;
+            }
+        }
+        if (first[SECTION_COUNT] != tasks.size() || !isConsistent(tasks)) {
+            rebuild(tasks);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean isConsistent(List<Task> tasks) {
+        for (int boundary = TODAY; boundary < SECTION_COUNT; boundary++) {
+            final int position = first[boundary];
+            if (position > 0 && tasks.get(position - 1).getDate().getTime() >= starts[boundary]) {
+                return false;
+            }
+            if (position < tasks.size() && tasks.get(position).getDate().getTime() < starts[boundary]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerBound(List<Task> tasks, int from, long time) {
+        int low = from;
+        int high = tasks.size();
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (tasks.get(middle).getDate().getTime() < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
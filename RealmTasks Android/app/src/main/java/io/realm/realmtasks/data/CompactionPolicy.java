@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.io.File;
+
+import io.realm.CompactOnLaunchCallback;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.log.RealmLog;
+
+/**
+ * Decides when Realm files are compacted. Files only shrink when they are compacted, long lived installs otherwise
+ * keep files which are many times larger than their data, and larger files open slower and need more address space.
+ * <p>
+ * Files of at least {@code minimumFileSize} bytes are compacted when they are opened and more than
+ * {@code maximumFreeRatio} of them is free. If {@code idleCompaction} is enabled, {@link #compactIfIdle} also compacts
+ * them while no instance is open, e.g. when the app goes to the background.
+ */
+public class CompactionPolicy implements CompactOnLaunchCallback {
+
+    public static final CompactionPolicy DEFAULT = new CompactionPolicy(10 * 1024 * 1024, 0.5f, true);
+
+    private final long minimumFileSize;
+    private final float maximumFreeRatio;
+    private final boolean idleCompaction;
+
+    public CompactionPolicy(long minimumFileSize, float maximumFreeRatio, boolean idleCompaction) {
+        this.minimumFileSize = minimumFileSize;
+        this.maximumFreeRatio = maximumFreeRatio;
+        this.idleCompaction = idleCompaction;
+    }
+
+    @Override
+    public boolean shouldCompact(long totalBytes, long usedBytes) {
+        if (totalBytes < minimumFileSize || totalBytes - usedBytes <= totalBytes * maximumFreeRatio) {
+            return false;
+        }
+        RealmLog.info("Compacting Realm on launch: %d bytes, %d bytes used.", totalBytes, usedBytes);
+        return true;
+    }
+
+    /**
+     * Compacts the Realm if no instance of it is open. This blocks, don't call it on the UI thread.
+     *
+     * @return {@code true} if the file has been compacted.
+     */
+    public boolean compactIfIdle(RealmConfiguration configuration) {
+        if (!idleCompaction || Realm.getGlobalInstanceCount(configuration) > 0) {
+            return false;
+        }
+        final File file = new File(configuration.getPath());
+        final long sizeBefore = file.length();
+        if (sizeBefore < minimumFileSize) {
+            return false;
+        }
+        final boolean compacted = Realm.compactRealm(configuration);
+        RealmLog.info("Compacted %s while idle: %d bytes before, %d bytes after.",
+                file.getName(), sizeBefore, file.length());
+        return compacted;
+    }
+
+    /**
+     * Returns the size of the Realm file, 0 if it doesn't exist yet.
+     */
+    public static long getFileSize(RealmConfiguration configuration) {
+        return new File(configuration.getPath()).length();
+    }
+
+    /**
+     * Logs the size of the Realm file before and after it has been opened, i.e. what compaction on launch achieved.
+     *
+     * @param sizeBefore the size from {@link #getFileSize} before the Realm has been opened.
+     */
+    public static void reportFileSize(RealmConfiguration configuration, long sizeBefore) {
+        final File file = new File(configuration.getPath());
+        RealmLog.info("Realm %s: %d bytes before opening, %d bytes after.", file.getName(), sizeBefore, file.length());
+    }
+}
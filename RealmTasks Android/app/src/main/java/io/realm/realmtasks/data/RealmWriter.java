@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.log.RealmLog;
+
+/**
+ * Single write pipeline for the app. Transactions are queued in order and executed on a dedicated thread which
+ * keeps its own Realm open, so the UI thread never waits for the write lock (e.g. while sync is committing).
+ * Everything that is queued while a commit is running is applied together in the next commit.
+ * <p>
+ * Transactions run on the writer thread, so they must not use managed objects from the caller's thread. Capture ids
+ * and plain values instead and look the objects up in the {@link Realm} passed to the transaction.
+ * <p>
+ * Transactions queued after the writer has been closed, e.g. the last commit of a screen which closes after logout,
+ * are dropped and reported as failed.
+ */
+public class RealmWriter {
+
+    private static final int MAX_BATCH_SIZE = 100;
+
+    private static RealmWriter defaultInstance;
+
+    private final RealmConfiguration configuration;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable drainRunnable = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Guarded by pending.
+    private final LinkedHashMap<Object, Operation> pending = new LinkedHashMap<>();
+    private boolean drainScheduled;
+    private boolean closed;
+
+    // Only accessed from the writer thread.
+    private Realm realm;
+
+    public RealmWriter(RealmConfiguration configuration) {
+        this.configuration = configuration;
+        final HandlerThread thread = new HandlerThread("RealmWriter");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                realm = Realm.getInstance(RealmWriter.this.configuration);
+            }
+        });
+    }
+
+    public static synchronized void setDefaultConfiguration(RealmConfiguration configuration) {
+        closeDefaultInstance();
+        defaultInstance = new RealmWriter(configuration);
+    }
+
+    public static synchronized RealmWriter getDefaultInstance() {
+        if (defaultInstance == null) {
+            throw new IllegalStateException("Call setDefaultConfiguration() first.");
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Closes the default writer. It stays the default instance until the next configuration is set, so late writes
+     * are dropped instead of failing.
+     */
+    public static synchronized void closeDefaultInstance() {
+        if (defaultInstance != null) {
+            defaultInstance.close();
+        }
+    }
+
+    /**
+     * Cancels the transaction of a worker on the writer thread if it is still open, e.g. because the worker threw.
+     * Otherwise the writer thread's Realm stays in the transaction and every later write fails. Call it from the
+     * {@code finally} block of the transaction.
+     */
+    public static void cancelIfOpen(Realm realm) {
+        if (realm.isInTransaction()) {
+            realm.cancelTransaction();
+        }
+    }
+
+    public RealmConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    public void execute(Realm.Transaction transaction) {
+        enqueue(new Object(), transaction, null, null);
+    }
+
+    /**
+     * Same as {@link #execute(Realm.Transaction)}, the callbacks are called on the main thread once the transaction
+     * has been committed or has failed.
+     */
+    public void execute(Realm.Transaction transaction, Realm.Transaction.OnSuccess onSuccess,
+                        Realm.Transaction.OnError onError) {
+        enqueue(new Object(), transaction, onSuccess, onError);
+    }
+
+    /**
+     * Queues a transaction which supersedes any transaction with the same key that hasn't run yet, e.g. the latest
+     * text of an item which is being edited.
+     */
+    public void executeCoalesced(Object key, Realm.Transaction transaction) {
+        enqueue(key, transaction, null, null);
+    }
+
+    /**
+     * Runs a task on the writer thread, e.g. to register change listeners which repair data in the background.
+     */
+    public void post(Runnable runnable) {
+        handler.post(runnable);
+    }
+
+    public void postDelayed(Runnable runnable, long delayMillis) {
+        handler.postDelayed(runnable, delayMillis);
+    }
+
+    public void removeCallbacks(Runnable runnable) {
+        handler.removeCallbacks(runnable);
+    }
+
+    private void enqueue(Object key, Realm.Transaction transaction, Realm.Transaction.OnSuccess onSuccess,
+                         Realm.Transaction.OnError onError) {
+        synchronized (pending) {
+            final Operation operation = new Operation(transaction, onSuccess, onError);
+            if (closed) {
+                operation.notifyError(new IllegalStateException("This RealmWriter has been closed."));
+                return;
+            }
+            // The replacement goes to the end of the queue so it still runs after everything queued before it.
+            final Operation replaced = pending.remove(key);
+            if (replaced != null) {
+                operation.inheritCallbacks(replaced);
+            }
+            pending.put(key, operation);
+            if (!drainScheduled) {
+                drainScheduled = true;
+                handler.post(drainRunnable);
+            }
+        }
+    }
+
+    private void drain() {
+        if (realm == null) {
+            return;
+        }
+        final List<Operation> batch = new ArrayList<>();
+        synchronized (pending) {
+            final Iterator<Operation> iterator = pending.values().iterator();
+            while (iterator.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                batch.add(iterator.next());
+                iterator.remove();
+            }
+            if (pending.isEmpty()) {
+                drainScheduled = false;
+            } else {
+                handler.post(drainRunnable);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            realm.beginTransaction();
+            for (Operation operation : batch) {
+                operation.transaction.execute(realm);
+            }
+            realm.commitTransaction();
+        } catch (RuntimeException e) {
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            if (batch.size() == 1) {
+                batch.get(0).notifyError(e);
+            } else {
+                // Don't let one broken transaction take the rest of the batch down with it.
+                for (Operation operation : batch) {
+                    executeSeparately(operation);
+                }
+            }
+            return;
+        }
+        for (Operation operation : batch) {
+            operation.notifySuccess();
+        }
+    }
+
+    private void executeSeparately(Operation operation) {
+        try {
+            realm.beginTransaction();
+            operation.transaction.execute(realm);
+            realm.commitTransaction();
+        } catch (RuntimeException e) {
+            if (realm.isInTransaction()) {
+                realm.cancelTransaction();
+            }
+            operation.notifyError(e);
+            return;
+        }
+        operation.notifySuccess();
+    }
+
+    private void close() {
+        synchronized (pending) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    synchronized (pending) {
+                        if (pending.isEmpty()) {
+                            break;
+                        }
+                    }
+                    drain();
+                }
+                realm.close();
+                realm = null;
+                Looper.myLooper().quit();
+            }
+        });
+    }
+
+    private class Operation {
+        private final Realm.Transaction transaction;
+        private final List<Realm.Transaction.OnSuccess> onSuccess = new ArrayList<>(1);
+        private final List<Realm.Transaction.OnError> onError = new ArrayList<>(1);
+
+        Operation(Realm.Transaction transaction, Realm.Transaction.OnSuccess onSuccess,
+                  Realm.Transaction.OnError onError) {
+            this.transaction = transaction;
+            if (onSuccess != null) {
+                this.onSuccess.add(onSuccess);
+            }
+            if (onError != null) {
+                this.onError.add(onError);
+            }
+        }
+
+        void inheritCallbacks(Operation replaced) {
+            onSuccess.addAll(0, replaced.onSuccess);
+            onError.addAll(0, replaced.onError);
+        }
+
+        void notifySuccess() {
+            if (onSuccess.isEmpty()) {
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Realm.Transaction.OnSuccess callback : onSuccess) {
+                        callback.onSuccess();
+                    }
+                }
+            });
+        }
+
+        void notifyError(final Throwable error) {
+            if (onError.isEmpty()) {
+                RealmLog.error(error, "Write transaction failed.");
+                return;
+            }
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Realm.Transaction.OnError callback : onError) {
+                        callback.onError(error);
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import io.realm.DynamicRealm;
+import io.realm.RealmMigration;
+import io.realm.RealmObjectSchema;
+import io.realm.RealmSchema;
+import io.realm.realmtasks.model.ArchivedTask;
+import io.realm.realmtasks.model.Task;
+
+/**
+ * Schema versions of the app's Realms. Every schema change bumps {@link #VERSION} and adds a step to
+ * {@link #migrate}. The synced Realm only allows additive changes (new classes, fields and indexes), Realm applies
+ * those by itself, so only local Realms run the steps. Each step checks what is there, the same steps work for every
+ * Realm.
+ * <p>
+ * Version history:
+ * <ul>
+ * <li>0: initial schema.</li>
+ * <li>1: indexes on {@code Task.completed} and {@code Task.date} for filtering and sorting without scanning, and on
+ * {@code ArchivedTask.completedAt} for browsing the archive.</li>
+ * </ul>
+ */
+public class SchemaMigration implements RealmMigration {
+
+    public static final long VERSION = 1;
+
+    @Override
+    public void migrate(DynamicRealm realm, long oldVersion, long newVersion) {
+        final RealmSchema schema = realm.getSchema();
+        if (oldVersion == 0) {
+            addIndex(schema, Task.class.getSimpleName(), Task.FIELD_COMPLETED);
+            addIndex(schema, Task.class.getSimpleName(), Task.FIELD_DATE);
+            addIndex(schema, ArchivedTask.class.getSimpleName(), ArchivedTask.FIELD_COMPLETED_AT);
+            oldVersion++;
+        }
+    }
+
+    private static void addIndex(RealmSchema schema, String className, String fieldName) {
+        final RealmObjectSchema objectSchema = schema.get(className);
+        if (objectSchema != null && objectSchema.hasField(fieldName) && !objectSchema.hasIndex(fieldName)) {
+            objectSchema.addIndex(fieldName);
+        }
+    }
+
+    // Realm compares configurations when a Realm is opened again, all instances of the migration are the same.
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof SchemaMigration;
+    }
+
+    @Override
+    public int hashCode() {
+        return SchemaMigration.class.hashCode();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.OrderedRealmCollectionChangeListener;
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+import io.realm.realmtasks.model.IndexedTask;
+import io.realm.realmtasks.model.SearchToken;
+import io.realm.realmtasks.model.Task;
+
+/**
+ * Keeps the inverted index in the local search Realm up to date, see {@link TaskSearch}. Listens to all tasks on the
+ * {@link RealmWriter} thread, so both the writes of the app and changes from sync are picked up, and only reindexes the
+ * inserted and changed tasks. Tasks are indexed in batches of {@link #BATCH_SIZE}, the writes of the app get their
+ * turn in between.
+ * <p>
+ * Tasks which are deleted can't be mapped to their id anymore, their entries are removed by {@link TaskSearch} when
+ * it comes across them.
+ */
+public class SearchIndexer {
+
+    private static final int BATCH_SIZE = 200;
+
+    private final RealmWriter writer;
+    private final RealmConfiguration searchConfiguration;
+    private final Runnable indexRunnable = new Runnable() {
+        @Override
+        public void run() {
+            indexBatch();
+        }
+    };
+    private boolean started;
+
+    // Only accessed from the writer thread.
+    private Realm realm;
+    private Realm searchRealm;
+    private RealmResults<Task> tasks;
+    private final Set<String> pending = new LinkedHashSet<>();
+
+    public SearchIndexer(RealmWriter writer, RealmConfiguration searchConfiguration) {
+        this.writer = writer;
+        this.searchConfiguration = searchConfiguration;
+    }
+
+    public RealmConfiguration getSearchConfiguration() {
+        return searchConfiguration;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    private void open() {
+        realm = Realm.getInstance(writer.getConfiguration());
+        searchRealm = Realm.getInstance(searchConfiguration);
+        tasks = realm.where(Task.class).findAllAsync();
+        tasks.addChangeListener(new OrderedRealmCollectionChangeListener<RealmResults<Task>>() {
+            @Override
+            public void onChange(RealmResults<Task> results, OrderedCollectionChangeSet changeSet) {
+                if (changeSet == null) {
+                    // Catches up with everything which changed while the app wasn't running. Tasks whose text
+                    // didn't change are skipped cheaply.
+                    for (Task task : results) {
+                        addPending(task);
+                    }
+                } else {
+                    for (int index : changeSet.getInsertions()) {
+                        addPending(results.get(index));
+                    }
+                    for (int index : changeSet.getChanges()) {
+                        addPending(results.get(index));
+                    }
+                }
+                if (!pending.isEmpty()) {
+                    writer.removeCallbacks(indexRunnable);
+                    writer.post(indexRunnable);
+                }
+            }
+        });
+    }
+
+    private void close() {
+        writer.removeCallbacks(indexRunnable);
+        pending.clear();
+        tasks.removeAllChangeListeners();
+        tasks = null;
+        realm.close();
+        realm = null;
+        searchRealm.close();
+        searchRealm = null;
+    }
+
+    private void addPending(Task task) {
+        // Tasks without id get one from the SyncRepairer, that change brings them back here.
+        final String id = task.getId();
+        if (id != null) {
+            pending.add(id);
+        }
+    }
+
+    private void indexBatch() {
+        if (realm == null || pending.isEmpty()) {
+            return;
+        }
+        searchRealm.beginTransaction();
+        try {
+            final Iterator<String> iterator = pending.iterator();
+            for (int i = 0; i < BATCH_SIZE && iterator.hasNext(); i++) {
+                final String id = iterator.next();
+                iterator.remove();
+                index(id, realm.where(Task.class).equalTo(Task.FIELD_ID, id).findFirst());
+            }
+            searchRealm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(searchRealm);
+        }
+        if (!pending.isEmpty()) {
+            writer.post(indexRunnable);
+        }
+    }
+
+    private void index(String id, Task task) {
+        final String text = task == null || task.isDeleted() ? null : task.getText();
+        IndexedTask indexedTask = searchRealm.where(IndexedTask.class)
+                .equalTo(IndexedTask.FIELD_TASK_ID, id)
+                .findFirst();
+        if (indexedTask != null && text != null && text.equals(indexedTask.getText())) {
+            return;
+        }
+        remove(searchRealm, id);
+        if (text == null) {
+            return;
+        }
+        if (indexedTask == null || !indexedTask.isValid()) {
+            indexedTask = searchRealm.createObject(IndexedTask.class, id);
+        }
+        indexedTask.setText(text);
+
+        final List<String> words = SearchTokenizer.tokenize(text);
+        final Map<String, SearchToken> tokens = new HashMap<>();
+        for (int position = 0; position < words.size(); position++) {
+            final String word = words.get(position);
+            SearchToken token = tokens.get(word);
+            if (token == null) {
+                token = searchRealm.createObject(SearchToken.class);
+                token.setToken(word);
+                token.setTaskId(id);
+                token.setPosition(position);
+                tokens.put(word, token);
+            }
+            token.setCount(token.getCount() + 1);
+        }
+    }
+
+    /**
+     * Removes a task from the index. Must be called in a write transaction of the search Realm.
+     */
+    static void remove(Realm searchRealm, String id) {
+        searchRealm.where(SearchToken.class).equalTo(SearchToken.FIELD_TASK_ID, id).findAll().deleteAllFromRealm();
+        searchRealm.where(IndexedTask.class).equalTo(IndexedTask.FIELD_TASK_ID, id).findAll().deleteAllFromRealm();
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import io.realm.RealmList;
+import io.realm.RealmModel;
+import io.realm.RealmResults;
+import io.realm.realmtasks.model.Sortable;
+
+/**
+ * Fractional sort keys. A key is a base 36 fraction written as a string of the digits {@code 0-9a-z} which never
+ * ends with {@code 0}, so there is always room for another key between two existing ones. Moving an item is a
+ * single write of its own key, and concurrent moves on different devices merge like any other field change.
+ */
+public class SortKey {
+
+    private static final String DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz";
+    private static final int BASE = DIGITS.length();
+
+    // Inserting at the same spot over and over makes keys grow, lists with longer keys get rebalanced.
+    static final int MAX_LENGTH = 24;
+
+    private static final Comparator<Sortable> COMPARATOR = new Comparator<Sortable>() {
+        @Override
+        public int compare(Sortable left, Sortable right) {
+            return keyOf(left).compareTo(keyOf(right));
+        }
+    };
+
+    private SortKey() {
+    }
+
+    /**
+     * Returns a key which sorts between {@code before} and {@code after}. {@code null} means there is no item on
+     * that side. Keys which are out of order (e.g. two devices picked the same key) are tolerated by placing the new
+     * key right after {@code before}. Such lists have duplicate keys, which {@link #needsRepair(List)} detects, so the
+     * {@link SyncRepairer} rebalances them.
+     */
+    public static String between(String before, String after) {
+        if (before == null) {
+            before = "";
+        }
+        if (after != null && (after.isEmpty() || before.compareTo(after) >= 0)) {
+            after = null;
+        }
+        // Stepping instead of halving at either end keeps keys short when items are always added at the top.
+        if (after == null) {
+            return increment(before);
+        }
+        if (before.isEmpty()) {
+            return decrement(after);
+        }
+        return midpoint(before, after);
+    }
+
+    private static String increment(String key) {
+        if (key.isEmpty()) {
+            return String.valueOf(DIGITS.charAt(BASE / 2));
+        }
+        final int digit = digit(key.charAt(0));
+        if (digit < BASE - 1) {
+            return String.valueOf(DIGITS.charAt(digit + 1));
+        }
+        return key.charAt(0) + increment(key.substring(1));
+    }
+
+    private static String decrement(String key) {
+        int n = 0;
+        while (n < key.length() - 1 && key.charAt(n) == '0') {
+            n++;
+        }
+        final int digit = digit(key.charAt(n));
+        if (digit > 1) {
+            return key.substring(0, n) + DIGITS.charAt(digit - 1);
+        }
+        return midpoint("", key);
+    }
+
+    private static String midpoint(String before, String after) {
+        if (after != null) {
+            // Keep the common prefix, treating missing digits of before as 0.
+            int n = 0;
+            while (n < after.length() && digitAt(before, n) == digit(after.charAt(n))) {
+                n++;
+            }
+            if (n > 0) {
+                final String rest = before.length() > n ? before.substring(n) : "";
+                return after.substring(0, n) + midpoint(rest, after.substring(n));
+            }
+        }
+        final int digitBefore = digitAt(before, 0);
+        final int digitAfter = after != null ? digit(after.charAt(0)) : BASE;
+        if (digitAfter - digitBefore > 1) {
+            return String.valueOf(DIGITS.charAt((digitBefore + digitAfter) / 2));
+        }
+        if (after != null && after.length() > 1) {
+            return after.substring(0, 1);
+        }
+        return DIGITS.charAt(digitBefore) + midpoint(before.length() > 1 ? before.substring(1) : "", null);
+    }
+
+    /**
+     * Returns a key which places a new item above all items of the list.
+     */
+    public static <E extends RealmModel & Sortable> String top(RealmList<E> items) {
+        final RealmResults<E> sorted = items.where().findAllSorted(Sortable.FIELD_SORT_KEY);
+        return between(null, sorted.isEmpty() ? null : sorted.first().getSortKey());
+    }
+
+    /**
+     * Returns {@code count} evenly spaced, ascending keys which are as short as possible.
+     */
+    public static List<String> sequence(int count) {
+        int length = 1;
+        long space = BASE;
+        while (space <= count) {
+            length++;
+            space *= BASE;
+        }
+        final List<String> keys = new ArrayList<>(count);
+        final char[] chars = new char[length];
+        for (int i = 0; i < count; i++) {
+            long value = (i + 1) * space / (count + 1);
+            for (int j = length - 1; j >= 0; j--) {
+                chars[j] = DIGITS.charAt((int) (value % BASE));
+                value /= BASE;
+            }
+            int end = length;
+            while (chars[end - 1] == '0') {
+                end--;
+            }
+            keys.add(new String(chars, 0, end));
+        }
+        return keys;
+    }
+
+    /**
+     * Checks whether {@link #repair(List)} has anything to do: items without key (created by clients which don't know
+     * about sort keys), keys which grew too long, or keys used by more than one item (e.g. two devices moved items to
+     * the same spot), whose order is undefined.
+     */
+    public static boolean needsRepair(List<? extends Sortable> items) {
+        final Set<String> keys = new HashSet<>();
+        for (Sortable item : items) {
+            final String key = item.getSortKey();
+            if (key == null || key.length() > MAX_LENGTH || !keys.add(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gives keys to items which don't have one yet. They are placed above all other items, which is where every
+     * client inserts new items. Lists with overly long or duplicate keys, or without any keys at all, are rebalanced
+     * while keeping their current order, items with the same key keep the order of the list. Must be called in a
+     * write transaction.
+     */
+    public static void repair(List<? extends Sortable> items) {
+        final List<Sortable> missing = new ArrayList<>();
+        final Set<String> keys = new HashSet<>();
+        String first = null;
+        boolean rebalance = false;
+        for (Sortable item : items) {
+            final String key = item.getSortKey();
+            if (key == null) {
+                missing.add(item);
+            } else if (key.length() > MAX_LENGTH || !keys.add(key)) {
+                rebalance = true;
+            } else if (first == null || key.compareTo(first) < 0) {
+                first = key;
+            }
+        }
+        if (rebalance || missing.size() == items.size()) {
+            rebalance(items);
+            return;
+        }
+        String after = first;
+        for (int i = missing.size() - 1; i >= 0; i--) {
+            after = between(null, after);
+            missing.get(i).setSortKey(after);
+        }
+    }
+
+    private static void rebalance(List<? extends Sortable> items) {
+        // Collections.sort() is stable, so items without key keep the order of the underlying list.
+        final List<Sortable> sorted = new ArrayList<Sortable>(items);
+        Collections.sort(sorted, COMPARATOR);
+        final List<String> keys = sequence(sorted.size());
+        for (int i = 0; i < sorted.size(); i++) {
+            sorted.get(i).setSortKey(keys.get(i));
+        }
+    }
+
+    private static String keyOf(Sortable item) {
+        final String key = item.getSortKey();
+        return key == null ? "" : key;
+    }
+
+    private static int digitAt(String key, int index) {
+        return index < key.length() ? digit(key.charAt(index)) : 0;
+    }
+
+    private static int digit(char c) {
+        final int digit = DIGITS.indexOf(c);
+        if (digit < 0) {
+            throw new IllegalArgumentException("Invalid sort key character: " + c);
+        }
+        return digit;
+    }
+}
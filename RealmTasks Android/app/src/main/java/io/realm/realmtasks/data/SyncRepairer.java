@@ -0,0 +1,344 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.OrderedRealmCollectionChangeListener;
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmList;
+import io.realm.RealmResults;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+import io.realm.realmtasks.model.TaskListList;
+
+/**
+ * Repairs derived data after other clients (other devices, the server function) changed tasks.
+ * Those clients don't maintain the {@link TaskList} aggregates or sort keys, so every change to a {@link Task} is
+ * mapped to its owning list and the list is fixed up if needed. Tasks created by those clients also get an id, and
+ * tasks completed by them get a completion date.
+ * It also removes lists which have been added to {@link TaskListList} more than once by the sync merge.
+ * Runs on the {@link RealmWriter} thread so the UI thread never pays for it, and repairs are serialized with the
+ * writes of the app.
+ */
+public class SyncRepairer {
+
+    private final RealmWriter writer;
+    private boolean started;
+
+    // Only accessed from the writer thread.
+    private Realm realm;
+    private RealmResults<Task> tasks;
+    private RealmResults<TaskListList> taskListLists;
+    private final Map<Long, RealmList<TaskList>> watchedItems = new HashMap<>();
+    private final OrderedRealmCollectionChangeListener<RealmList<TaskList>> itemsListener =
+            new OrderedRealmCollectionChangeListener<RealmList<TaskList>>() {
+                @Override
+                public void onChange(RealmList<TaskList> items, OrderedCollectionChangeSet changeSet) {
+                    if (changeSet != null && changeSet.getInsertions().length > 0) {
+                        removeDuplicates(items, changeSet.getInsertions());
+                    }
+                }
+            };
+
+    public SyncRepairer(RealmWriter writer) {
+        this.writer = writer;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    private void open() {
+        realm = Realm.getInstance(writer.getConfiguration());
+        tasks = realm.where(Task.class).findAllAsync();
+        tasks.addChangeListener(new OrderedRealmCollectionChangeListener<RealmResults<Task>>() {
+            @Override
+            public void onChange(RealmResults<Task> results, OrderedCollectionChangeSet changeSet) {
+                assignMissingIds();
+                assignMissingCompletionDates();
+                if (changeSet == null) {
+                    repair(realm.where(TaskList.class).findAll());
+                } else {
+                    repair(collectAffectedLists(results, changeSet));
+                }
+            }
+        });
+        taskListLists = realm.where(TaskListList.class).findAllAsync();
+        taskListLists.addChangeListener(new RealmChangeListener<RealmResults<TaskListList>>() {
+            @Override
+            public void onChange(RealmResults<TaskListList> results) {
+                watchItems(results);
+                repairSortKeys(results);
+            }
+        });
+    }
+
+    private void close() {
+        for (RealmList<TaskList> items : watchedItems.values()) {
+            if (items.isValid()) {
+                items.removeChangeListener(itemsListener);
+            }
+        }
+        watchedItems.clear();
+        tasks.removeAllChangeListeners();
+        tasks = null;
+        taskListLists.removeAllChangeListeners();
+        taskListLists = null;
+        realm.close();
+        realm = null;
+    }
+
+    private void assignMissingIds() {
+        final RealmResults<Task> tasksWithoutId = realm.where(Task.class).isNull(Task.FIELD_ID).findAll();
+        if (tasksWithoutId.isEmpty()) {
+            return;
+        }
+        realm.beginTransaction();
+        try {
+            for (Task task : tasksWithoutId.createSnapshot()) {
+                final String id = deriveId(task);
+                if (id != null) {
+                    task.setId(id);
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+    }
+
+    /**
+     * All devices repair the same task, so the id is derived from the task and its place in its list instead of being
+     * random: devices which see the same synced state agree on it, and writes queued by id on any of them find the
+     * task. Tasks which aren't in a list yet are left alone, they are repaired once they are added to one.
+     */
+    private String deriveId(Task task) {
+        final RealmResults<TaskList> owners = task.getLists();
+        if (owners.isEmpty()) {
+            return null;
+        }
+        final TaskList owner = owners.first();
+        String name = owner.getId() + "/" + owner.getItems().indexOf(task) + "/" + task.getText();
+        String id = nameUuid(name);
+        // Same text at the same position, e.g. added again after the first one was moved. Taken ids are skipped
+        // in the same order on every device.
+        while (realm.where(Task.class).equalTo(Task.FIELD_ID, id).count() > 0) {
+            name += "/";
+            id = nameUuid(name);
+        }
+        return id;
+    }
+
+    private static String nameUuid(String name) {
+        return UUID.nameUUIDFromBytes(name.getBytes(Charset.forName("UTF-8"))).toString();
+    }
+
+    private void assignMissingCompletionDates() {
+        final RealmResults<Task> tasksWithoutDate = realm.where(Task.class)
+                .equalTo(Task.FIELD_COMPLETED, true)
+                .isNull(Task.FIELD_COMPLETED_AT)
+                .findAll();
+        if (tasksWithoutDate.isEmpty()) {
+            return;
+        }
+        // The actual date is unknown, the time we noticed is close enough for archiving.
+        final Date now = new Date();
+        realm.beginTransaction();
+        try {
+            for (Task task : tasksWithoutDate.createSnapshot()) {
+                task.setCompletedAt(now);
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+    }
+
+    private List<TaskList> collectAffectedLists(RealmResults<Task> results, OrderedCollectionChangeSet changeSet) {
+        final Set<String> seen = new HashSet<>();
+        final List<TaskList> affected = new ArrayList<>();
+        for (int index : changeSet.getInsertions()) {
+            collectOwners(results.get(index), seen, affected);
+        }
+        for (int index : changeSet.getChanges()) {
+            collectOwners(results.get(index), seen, affected);
+        }
+        if (changeSet.getDeletions().length > 0) {
+            // Deleted tasks can't be mapped to their list anymore, but removing them changed the size of the list.
+            for (TaskList taskList : realm.where(TaskList.class).findAll()) {
+                if (TaskListCounters.isStale(taskList) && seen.add(taskList.getId())) {
+                    affected.add(taskList);
+                }
+            }
+        }
+        return affected;
+    }
+
+    private void collectOwners(Task task, Set<String> seen, List<TaskList> affected) {
+        for (TaskList taskList : task.getLists()) {
+            if (seen.add(taskList.getId())) {
+                affected.add(taskList);
+            }
+        }
+    }
+
+    private void repair(List<TaskList> taskLists) {
+        final List<TaskList> inconsistent = new ArrayList<>();
+        final List<TaskList> unsorted = new ArrayList<>();
+        for (TaskList taskList : taskLists) {
+            if (!TaskListCounters.isConsistent(taskList)) {
+                inconsistent.add(taskList);
+            }
+            if (SortKey.needsRepair(taskList.getItems())) {
+                unsorted.add(taskList);
+            }
+        }
+        if (inconsistent.isEmpty() && unsorted.isEmpty()) {
+            return;
+        }
+        realm.beginTransaction();
+        try {
+            for (TaskList taskList : inconsistent) {
+                if (taskList.isValid()) {
+                    TaskListCounters.recompute(taskList);
+                }
+            }
+            for (TaskList taskList : unsorted) {
+                if (taskList.isValid()) {
+                    SortKey.repair(taskList.getItems());
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+    }
+
+    private void watchItems(RealmResults<TaskListList> taskListLists) {
+        for (TaskListList taskListList : taskListLists) {
+            if (watchedItems.containsKey(taskListList.getId())) {
+                continue;
+            }
+            final RealmList<TaskList> items = taskListList.getItems();
+            watchedItems.put(taskListList.getId(), items);
+            items.addChangeListener(itemsListener);
+            // Catches duplicates which have been merged while the app wasn't running, afterwards only the lists
+            // inserted by a change are looked at.
+            final List<Integer> all = new ArrayList<>(items.size());
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i < items.size(); i++) {
+                if (!seen.add(items.get(i).getId())) {
+                    all.add(i);
+                }
+            }
+            if (!all.isEmpty()) {
+                final int[] positions = new int[all.size()];
+                for (int i = 0; i < positions.length; i++) {
+                    positions[i] = all.get(i);
+                }
+                removeDuplicates(items, positions);
+            }
+        }
+    }
+
+    /**
+     * The default list is being added on all devices, so according to the merge rules it might be added multiple
+     * times. Keeps the first occurrence of each of the lists at the given positions and removes the others.
+     * Proper ordered sets are being tracked here: https://github.com/realm/realm-core/issues/1206
+     */
+    private void removeDuplicates(RealmList<TaskList> items, int[] positions) {
+        final List<TaskList> candidates = new ArrayList<>(positions.length);
+        for (int position : positions) {
+            final TaskList taskList = items.get(position);
+            if (items.indexOf(taskList) != items.lastIndexOf(taskList)) {
+                candidates.add(taskList);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        realm.beginTransaction();
+        try {
+            for (TaskList taskList : candidates) {
+                final int first = items.indexOf(taskList);
+                int last;
+                while ((last = items.lastIndexOf(taskList)) > first) {
+                    items.remove(last);
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+    }
+
+    private void repairSortKeys(List<TaskListList> taskListLists) {
+        final List<TaskListList> unsorted = new ArrayList<>();
+        for (TaskListList taskListList : taskListLists) {
+            if (SortKey.needsRepair(taskListList.getItems())) {
+                unsorted.add(taskListList);
+            }
+        }
+        if (unsorted.isEmpty()) {
+            return;
+        }
+        realm.beginTransaction();
+        try {
+            for (TaskListList taskListList : unsorted) {
+                if (taskListList.isValid()) {
+                    SortKey.repair(taskListList.getItems());
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+    }
+}
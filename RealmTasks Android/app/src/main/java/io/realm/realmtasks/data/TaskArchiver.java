@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+import io.realm.Sort;
+import io.realm.realmtasks.model.ArchivedTask;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+
+/**
+ * Moves completed tasks which are older than a given age from the synced Realm into a local archive Realm, which
+ * keeps the synced Realm, its history and the lists small: archived tasks don't cost file size, sync traffic or
+ * query time there anymore. Runs on the {@link RealmWriter} thread in batches of
+ * {@link #BATCH_SIZE} tasks and checks again every {@link #INTERVAL}.
+ * <p>
+ * Archived tasks can be browsed with {@link #findArchivedTasks(Realm, String)} and put back with
+ * {@link #restore(String)}.
+ */
+public class TaskArchiver {
+
+    public static final long DEFAULT_MAX_AGE = TimeUnit.DAYS.toMillis(30);
+    private static final long INTERVAL = TimeUnit.HOURS.toMillis(1);
+    private static final int BATCH_SIZE = 200;
+
+    private final RealmWriter writer;
+    private final RealmConfiguration archiveConfiguration;
+    private final long maxAge;
+    private final Runnable archiveRunnable = new Runnable() {
+        @Override
+        public void run() {
+            archive();
+        }
+    };
+    private boolean started;
+
+    // Only accessed from the writer thread. The archive Realm is only open while it is used, so it can be compacted
+    // while the app is idle.
+    private Realm realm;
+
+    /**
+     * @param maxAge how long after their completion tasks stay in the synced Realm, in milliseconds.
+     */
+    public TaskArchiver(RealmWriter writer, RealmConfiguration archiveConfiguration, long maxAge) {
+        this.writer = writer;
+        this.archiveConfiguration = archiveConfiguration;
+        this.maxAge = maxAge;
+    }
+
+    public RealmConfiguration getArchiveConfiguration() {
+        return archiveConfiguration;
+    }
+
+    /**
+     * Returns the archived tasks of a list, most recently completed first. The query runs asynchronously, the Realm
+     * must have been opened with {@link #getArchiveConfiguration()}.
+     */
+    public static RealmResults<ArchivedTask> findArchivedTasks(Realm archiveRealm, String taskListId) {
+        return archiveRealm.where(ArchivedTask.class)
+                .equalTo(ArchivedTask.FIELD_TASK_LIST_ID, taskListId)
+                .findAllSortedAsync(ArchivedTask.FIELD_COMPLETED_AT, Sort.DESCENDING);
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    /**
+     * Moves an archived task back to its list, as a completed task. Nothing happens if the list doesn't exist anymore.
+     */
+    public void restore(final String id) {
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                restoreTask(id);
+            }
+        });
+    }
+
+    private void open() {
+        realm = Realm.getInstance(writer.getConfiguration());
+        writer.post(archiveRunnable);
+    }
+
+    private void close() {
+        writer.removeCallbacks(archiveRunnable);
+        realm.close();
+        realm = null;
+    }
+
+    private void archive() {
+        if (realm == null) {
+            return;
+        }
+        final Date completedBefore = new Date(System.currentTimeMillis() - maxAge);
+        final List<Task> tasks = realm.where(Task.class)
+                .equalTo(Task.FIELD_COMPLETED, true)
+                .equalTo(Task.FIELD_DELETED, false)
+                .isNotNull(Task.FIELD_ID)
+                .lessThan(Task.FIELD_COMPLETED_AT, completedBefore)
+                .findAll()
+                .createSnapshot();
+        final int count = Math.min(BATCH_SIZE, tasks.size());
+        if (count > 0) {
+            final Realm archiveRealm = Realm.getInstance(archiveConfiguration);
+            try {
+                move(archiveRealm, tasks.subList(0, count));
+            } finally {
+                archiveRealm.close();
+            }
+        }
+        if (count == BATCH_SIZE) {
+            // There might be more, continue after the writes which queued up in the meantime.
+            writer.post(archiveRunnable);
+        } else {
+            writer.postDelayed(archiveRunnable, INTERVAL);
+        }
+    }
+
+    private void move(Realm archiveRealm, List<Task> tasks) {
+        // The copies are committed first, so a task which is interrupted while being moved is never lost.
+        final Date now = new Date();
+        archiveRealm.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                archiveRealm.copyToRealmOrUpdate(toArchivedTask(task, now));
+            }
+            archiveRealm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(archiveRealm);
+        }
+
+        final List<String> reopened = new ArrayList<>();
+        realm.beginTransaction();
+        try {
+            for (Task task : tasks) {
+                // Beginning the transaction brought in the latest changes, the task might have been reopened meanwhile.
+                if (!task.isValid()) {
+                    continue;
+                }
+                if (!task.isCompleted() || task.isDeleted()) {
+                    reopened.add(task.getId());
+                    continue;
+                }
+                final Date date = task.getDate();
+                final List<TaskList> owners = new ArrayList<>(task.getLists());
+                task.deleteFromRealm();
+                for (TaskList owner : owners) {
+                    TaskListCounters.onTaskRemoved(owner, true, date);
+                }
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+
+        if (!reopened.isEmpty()) {
+            archiveRealm.beginTransaction();
+            try {
+                archiveRealm.where(ArchivedTask.class)
+                        .in(ArchivedTask.FIELD_ID, reopened.toArray(new String[reopened.size()]))
+                        .findAll()
+                        .deleteAllFromRealm();
+                archiveRealm.commitTransaction();
+            } finally {
+                RealmWriter.cancelIfOpen(archiveRealm);
+            }
+        }
+    }
+
+    private ArchivedTask toArchivedTask(Task task, Date archivedAt) {
+        final ArchivedTask archivedTask = new ArchivedTask();
+        archivedTask.setId(task.getId());
+        archivedTask.setText(task.getText());
+        archivedTask.setDate(task.getDate());
+        archivedTask.setCompletedAt(task.getCompletedAt());
+        archivedTask.setSortKey(task.getSortKey());
+        archivedTask.setArchivedAt(archivedAt);
+        final RealmResults<TaskList> lists = task.getLists();
+        if (!lists.isEmpty()) {
+            archivedTask.setTaskListId(lists.first().getId());
+            archivedTask.setTaskListText(lists.first().getText());
+        }
+        return archivedTask;
+    }
+
+    private void restoreTask(String id) {
+        if (realm == null) {
+            return;
+        }
+        final Realm archiveRealm = Realm.getInstance(archiveConfiguration);
+        try {
+            restoreTask(archiveRealm, id);
+        } finally {
+            archiveRealm.close();
+        }
+    }
+
+    private void restoreTask(Realm archiveRealm, String id) {
+        final ArchivedTask archivedTask = archiveRealm.where(ArchivedTask.class)
+                .equalTo(ArchivedTask.FIELD_ID, id)
+                .findFirst();
+        if (archivedTask == null) {
+            return;
+        }
+        realm.beginTransaction();
+        try {
+            final TaskList taskList = realm.where(TaskList.class)
+                    .equalTo(TaskList.FIELD_ID, archivedTask.getTaskListId())
+                    .findFirst();
+            if (taskList == null || taskList.isDeleted()) {
+                return;
+            }
+            // A task which has been restored already only leaves the archive.
+            if (realm.where(Task.class).equalTo(Task.FIELD_ID, archivedTask.getId()).count() > 0) {
+                realm.cancelTransaction();
+            } else {
+                copyBack(taskList, archivedTask);
+                realm.commitTransaction();
+            }
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+
+        archiveRealm.beginTransaction();
+        try {
+            archivedTask.deleteFromRealm();
+            archiveRealm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(archiveRealm);
+        }
+    }
+
+    private void copyBack(TaskList taskList, ArchivedTask archivedTask) {
+        final Task task = realm.createObject(Task.class);
+        task.setId(archivedTask.getId());
+        task.setText(archivedTask.getText());
+        task.setDate(archivedTask.getDate());
+        task.setCompleted(true);
+        // Restarts the clock, otherwise the task would be archived again right away.
+        task.setCompletedAt(new Date());
+        task.setSortKey(archivedTask.getSortKey());
+        taskList.getItems().add(task);
+        TaskListCounters.onTaskAdded(taskList, task);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.Date;
+
+import io.realm.RealmQuery;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+
+/**
+ * Maintains the aggregates stored on {@link TaskList} (incomplete count, total count and oldest open due date).
+ * Soft deleted tasks still count towards the total, which is the size of the items, but they are never open.
+ * All mutating methods must be called inside the write transaction that changes the task itself.
+ */
+public class TaskListCounters {
+
+    private TaskListCounters() {
+    }
+
+    public static void onTaskAdded(TaskList taskList, Task task) {
+        taskList.setTotalCount(taskList.getTotalCount() + 1);
+        if (!task.isCompleted()) {
+            taskList.setIncompleteCount(taskList.getIncompleteCount() + 1);
+            includeOpenDate(taskList, task.getDate());
+        }
+    }
+
+    /**
+     * Must be called after the task has been deleted, with the values it had before. Pass {@code true} for
+     * {@code completed} if the task was soft deleted, it didn't count as open anymore.
+     */
+    public static void onTaskRemoved(TaskList taskList, boolean completed, Date date) {
+        taskList.setTotalCount(Math.max(0, taskList.getTotalCount() - 1));
+        if (!completed) {
+            taskList.setIncompleteCount(Math.max(0, taskList.getIncompleteCount() - 1));
+            if (date != null && date.equals(taskList.getOldestOpenDate())) {
+                taskList.setOldestOpenDate(queryOldestOpenDate(taskList));
+            }
+        }
+    }
+
+    public static void onTaskCompletedChanged(TaskList taskList, Task task) {
+        if (!task.isDeleted()) {
+            onTaskOpenChanged(taskList, task.getDate(), !task.isCompleted());
+        }
+    }
+
+    /**
+     * Must be called after {@link Task#setDeleted(boolean)}, a soft deleted task is treated like a completed one.
+     */
+    public static void onTaskDeletedChanged(TaskList taskList, Task task) {
+        if (!task.isCompleted()) {
+            onTaskOpenChanged(taskList, task.getDate(), !task.isDeleted());
+        }
+    }
+
+    /**
+     * Must be called after {@link Task#setDate(Date)}, with the date the task had before.
+     */
+    public static void onTaskDateChanged(TaskList taskList, Task task, Date previousDate) {
+        if (task.isCompleted() || task.isDeleted()) {
+            return;
+        }
+        if (previousDate != null && previousDate.equals(taskList.getOldestOpenDate())) {
+            taskList.setOldestOpenDate(queryOldestOpenDate(taskList));
+        } else {
+            includeOpenDate(taskList, task.getDate());
+        }
+    }
+
+    /**
+     * Cheap check which catches tasks being added or removed behind our back, e.g. by a sync merge.
+     */
+    public static boolean isStale(TaskList taskList) {
+        return taskList.getTotalCount() != taskList.getItems().size();
+    }
+
+    /**
+     * Checks the stored aggregates against the actual items. This runs queries, so don't call it on the UI thread.
+     */
+    public static boolean isConsistent(TaskList taskList) {
+        if (isStale(taskList)) {
+            return false;
+        }
+        if (taskList.getIncompleteCount() != openItems(taskList).count()) {
+            return false;
+        }
+        final Date oldestOpenDate = queryOldestOpenDate(taskList);
+        return oldestOpenDate == null
+                ? taskList.getOldestOpenDate() == null
+                : oldestOpenDate.equals(taskList.getOldestOpenDate());
+    }
+
+    /**
+     * Rebuilds all aggregates from the items of the list.
+     */
+    public static void recompute(TaskList taskList) {
+        taskList.setTotalCount(taskList.getItems().size());
+        taskList.setIncompleteCount(openItems(taskList).count());
+        taskList.setOldestOpenDate(queryOldestOpenDate(taskList));
+    }
+
+    private static void onTaskOpenChanged(TaskList taskList, Date date, boolean open) {
+        if (open) {
+            taskList.setIncompleteCount(taskList.getIncompleteCount() + 1);
+            includeOpenDate(taskList, date);
+        } else {
+            taskList.setIncompleteCount(Math.max(0, taskList.getIncompleteCount() - 1));
+            if (date != null && date.equals(taskList.getOldestOpenDate())) {
+                taskList.setOldestOpenDate(queryOldestOpenDate(taskList));
+            }
+        }
+    }
+
+    private static void includeOpenDate(TaskList taskList, Date date) {
+        if (date == null) {
+            return;
+        }
+        final Date oldestOpenDate = taskList.getOldestOpenDate();
+        if (oldestOpenDate == null || date.before(oldestOpenDate)) {
+            taskList.setOldestOpenDate(date);
+        }
+    }
+
+    private static RealmQuery<Task> openItems(TaskList taskList) {
+        return taskList.getItems().where()
+                .equalTo(Task.FIELD_COMPLETED, false)
+                .equalTo(Task.FIELD_DELETED, false);
+    }
+
+    private static Date queryOldestOpenDate(TaskList taskList) {
+        return openItems(taskList).minimumDate(Task.FIELD_DATE);
+    }
+}
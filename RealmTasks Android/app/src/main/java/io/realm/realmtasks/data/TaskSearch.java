@@ -0,0 +1,292 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.realm.Realm;
+import io.realm.RealmConfiguration;
+import io.realm.RealmResults;
+import io.realm.realmtasks.model.SearchToken;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+
+/**
+ * Searches the tasks of all lists using the index maintained by {@link SearchIndexer}. Queries run on a thread of
+ * their own, a query which is superseded by the next keystroke is dropped as soon as possible. Every term of the
+ * query must match, the last one as a prefix since it is usually still being typed.
+ * <p>
+ * Results are delivered on the main thread in pages of {@link #PAGE_SIZE}, best matches first, so the first rows
+ * show up before all hits have been resolved to their tasks.
+ */
+public class TaskSearch {
+
+    public static final int MAX_RESULTS = 100;
+    static final int PAGE_SIZE = 20;
+
+    public interface Listener {
+        /**
+         * Called when a new query starts, results of previous queries won't be delivered anymore.
+         */
+        void onSearchStarted(String query);
+
+        void onResultsFound(List<SearchResult> results);
+    }
+
+    private static final Comparator<Hit> BY_SCORE = new Comparator<Hit>() {
+        @Override
+        public int compare(Hit left, Hit right) {
+            if (left.matchedTerms != right.matchedTerms) {
+                return right.matchedTerms - left.matchedTerms;
+            }
+            return Float.compare(right.score, left.score);
+        }
+    };
+
+    private final RealmConfiguration configuration;
+    private final RealmConfiguration searchConfiguration;
+    private final Listener listener;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    // Queries are posted with this token, so a new query or close() drops them but not the runnable opening the Realms.
+    private final Object queryToken = new Object();
+
+    // Only accessed from the search thread.
+    private Realm realm;
+    private Realm searchRealm;
+
+    public TaskSearch(RealmConfiguration configuration, RealmConfiguration searchConfiguration, Listener listener) {
+        this.configuration = configuration;
+        this.searchConfiguration = searchConfiguration;
+        this.listener = listener;
+        final HandlerThread thread = new HandlerThread("TaskSearch");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                realm = Realm.getInstance(TaskSearch.this.configuration);
+                searchRealm = Realm.getInstance(TaskSearch.this.searchConfiguration);
+            }
+        });
+    }
+
+    public void search(final String query) {
+        final int current = generation.incrementAndGet();
+        listener.onSearchStarted(query);
+        handler.removeCallbacksAndMessages(queryToken);
+        handler.postAtTime(new Runnable() {
+            @Override
+            public void run() {
+                run(current, SearchTokenizer.tokenize(query));
+            }
+        }, queryToken, SystemClock.uptimeMillis());
+    }
+
+    public void close() {
+        generation.incrementAndGet();
+        handler.removeCallbacksAndMessages(queryToken);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                realm.close();
+                realm = null;
+                searchRealm.close();
+                searchRealm = null;
+                Looper.myLooper().quit();
+            }
+        });
+    }
+
+    private void run(int current, List<String> terms) {
+        if (terms.isEmpty() || current != generation.get()) {
+            return;
+        }
+        // Both Realms are advanced by the looper, refresh so the results reflect the latest writes.
+        realm.refresh();
+        searchRealm.refresh();
+
+        final Map<String, Hit> hits = new HashMap<>();
+        for (int i = 0; i < terms.size(); i++) {
+            final String term = terms.get(i);
+            final boolean prefix = i == terms.size() - 1;
+            final RealmResults<SearchToken> tokens = prefix
+                    ? searchRealm.where(SearchToken.class).beginsWith(SearchToken.FIELD_TOKEN, term).findAll()
+                    : searchRealm.where(SearchToken.class).equalTo(SearchToken.FIELD_TOKEN, term).findAll();
+            for (SearchToken token : tokens) {
+                final String taskId = token.getTaskId();
+                Hit hit = hits.get(taskId);
+                if (hit == null) {
+                    hit = new Hit(taskId);
+                    hits.put(taskId, hit);
+                }
+                hit.add(i, token, term);
+            }
+            if (current != generation.get()) {
+                return;
+            }
+        }
+
+        final List<Hit> ranked = new ArrayList<>(hits.size());
+        for (Hit hit : hits.values()) {
+            if (hit.matchedTerms == terms.size()) {
+                ranked.add(hit);
+            }
+        }
+        Collections.sort(ranked, BY_SCORE);
+
+        final List<String> stale = new ArrayList<>();
+        List<SearchResult> page = new ArrayList<>(PAGE_SIZE);
+        int found = 0;
+        for (Hit hit : ranked) {
+            if (found == MAX_RESULTS || current != generation.get()) {
+                break;
+            }
+            final Task task = realm.where(Task.class).equalTo(Task.FIELD_ID, hit.taskId).findFirst();
+            if (task == null) {
+                stale.add(hit.taskId);
+                continue;
+            }
+            if (task.isDeleted()) {
+                continue;
+            }
+            page.add(toResult(task));
+            found++;
+            if (page.size() == PAGE_SIZE) {
+                deliver(current, page);
+                page = new ArrayList<>(PAGE_SIZE);
+            }
+        }
+        if (!page.isEmpty()) {
+            deliver(current, page);
+        }
+        removeStale(stale);
+    }
+
+    private SearchResult toResult(Task task) {
+        final RealmResults<TaskList> lists = task.getLists();
+        final TaskList taskList = lists.isEmpty() ? null : lists.first();
+        return new SearchResult(task.getId(), task.getText(), task.isCompleted(),
+                taskList != null ? taskList.getId() : null, taskList != null ? taskList.getText() : null);
+    }
+
+    private void deliver(final int current, final List<SearchResult> results) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (current == generation.get()) {
+                    listener.onResultsFound(results);
+                }
+            }
+        });
+    }
+
+    /**
+     * Tasks which have been deleted by other clients can't be removed by the indexer, it never learns their ids.
+     */
+    private void removeStale(List<String> stale) {
+        if (stale.isEmpty()) {
+            return;
+        }
+        searchRealm.beginTransaction();
+        try {
+            for (String taskId : stale) {
+                SearchIndexer.remove(searchRealm, taskId);
+            }
+            searchRealm.commitTransaction();
+        } finally {
+            if (searchRealm.isInTransaction()) {
+                searchRealm.cancelTransaction();
+            }
+        }
+    }
+
+    private static class Hit {
+        final String taskId;
+        int matchedTerms;
+        float score;
+        private int lastTerm = -1;
+
+        Hit(String taskId) {
+            this.taskId = taskId;
+        }
+
+        void add(int term, SearchToken token, String query) {
+            // A prefix can match several tokens of the same task, only count the term once.
+            if (term != lastTerm) {
+                lastTerm = term;
+                matchedTerms++;
+            }
+            // Frequent terms, terms early in the text and whole words rank higher.
+            score += token.getCount() + 1f / (1 + token.getPosition());
+            if (token.getToken().length() == query.length()) {
+                score += 1;
+            }
+        }
+    }
+
+    /**
+     * A task found by the search, detached from the Realm so it can be handed to the main thread.
+     */
+    public static class SearchResult {
+        private final String taskId;
+        private final String text;
+        private final boolean completed;
+        private final String taskListId;
+        private final String taskListText;
+
+        SearchResult(String taskId, String text, boolean completed, String taskListId, String taskListText) {
+            this.taskId = taskId;
+            this.text = text;
+            this.completed = completed;
+            this.taskListId = taskListId;
+            this.taskListText = taskListText;
+        }
+
+        public String getTaskId() {
+            return taskId;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+
+        public String getTaskListId() {
+            return taskListId;
+        }
+
+        public String getTaskListText() {
+            return taskListText;
+        }
+    }
+}
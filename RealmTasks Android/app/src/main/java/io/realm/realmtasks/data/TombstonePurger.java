@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
+import io.realm.RealmList;
+import io.realm.RealmResults;
+import io.realm.realmtasks.model.Deletable;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+
+/**
+ * Hard deletes soft deleted tasks and lists once they can't be restored anymore. Runs on the {@link RealmWriter}
+ * thread and deletes at most {@link #BATCH_SIZE} objects per transaction, the writes of the app get their turn in
+ * between. Deleting a list with thousands of tasks doesn't hold the write lock for long.
+ */
+public class TombstonePurger {
+
+    // How long a dismissed item can be restored.
+    public static final long UNDO_WINDOW = TimeUnit.SECONDS.toMillis(10);
+    private static final int BATCH_SIZE = 500;
+
+    private final RealmWriter writer;
+    private final Runnable purgeRunnable = new Runnable() {
+        @Override
+        public void run() {
+            purge();
+        }
+    };
+    private boolean started;
+
+    // Only accessed from the writer thread.
+    private Realm realm;
+    private RealmResults<Task> deletedTasks;
+    private RealmResults<TaskList> deletedTaskLists;
+
+    public TombstonePurger(RealmWriter writer) {
+        this.writer = writer;
+    }
+
+    public void start() {
+        if (started) {
+            return;
+        }
+        started = true;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    public void stop() {
+        if (!started) {
+            return;
+        }
+        started = false;
+        writer.post(new Runnable() {
+            @Override
+            public void run() {
+                close();
+            }
+        });
+    }
+
+    private void open() {
+        realm = Realm.getInstance(writer.getConfiguration());
+        deletedTasks = realm.where(Task.class).equalTo(Task.FIELD_DELETED, true).findAllAsync();
+        deletedTasks.addChangeListener(new RealmChangeListener<RealmResults<Task>>() {
+            @Override
+            public void onChange(RealmResults<Task> results) {
+                schedule();
+            }
+        });
+        deletedTaskLists = realm.where(TaskList.class).equalTo(TaskList.FIELD_DELETED, true).findAllAsync();
+        deletedTaskLists.addChangeListener(new RealmChangeListener<RealmResults<TaskList>>() {
+            @Override
+            public void onChange(RealmResults<TaskList> results) {
+                schedule();
+            }
+        });
+    }
+
+    private void close() {
+        writer.removeCallbacks(purgeRunnable);
+        deletedTasks.removeAllChangeListeners();
+        deletedTasks = null;
+        deletedTaskLists.removeAllChangeListeners();
+        deletedTaskLists = null;
+        realm.close();
+        realm = null;
+    }
+
+    /**
+     * Schedules the next purge for when the oldest tombstone expires.
+     */
+    private void schedule() {
+        writer.removeCallbacks(purgeRunnable);
+        if (!deletedTasks.isLoaded() || !deletedTaskLists.isLoaded()) {
+            return;
+        }
+        final Date oldestTask = deletedTasks.minDate(Deletable.FIELD_DELETED_AT);
+        final Date oldestTaskList = deletedTaskLists.minDate(Deletable.FIELD_DELETED_AT);
+        final Date oldest;
+        if (oldestTask == null || (oldestTaskList != null && oldestTaskList.before(oldestTask))) {
+            oldest = oldestTaskList;
+        } else {
+            oldest = oldestTask;
+        }
+        if (oldest == null) {
+            return;
+        }
+        final long delay = oldest.getTime() + UNDO_WINDOW - System.currentTimeMillis();
+        writer.postDelayed(purgeRunnable, Math.max(0, delay));
+    }
+
+    private void purge() {
+        if (realm == null) {
+            return;
+        }
+        final Date expired = new Date(System.currentTimeMillis() - UNDO_WINDOW);
+        int count;
+        realm.beginTransaction();
+        try {
+            count = purgeTasks(expired, BATCH_SIZE);
+            if (count < BATCH_SIZE) {
+                count += purgeTaskLists(expired, BATCH_SIZE - count);
+            }
+            realm.commitTransaction();
+        } finally {
+            RealmWriter.cancelIfOpen(realm);
+        }
+        if (count == BATCH_SIZE) {
+            // There might be more, continue after the writes which queued up in the meantime.
+            writer.post(purgeRunnable);
+        } else {
+            schedule();
+        }
+    }
+
+    private int purgeTasks(Date expired, int limit) {
+        final List<Task> tasks = realm.where(Task.class)
+                .equalTo(Task.FIELD_DELETED, true)
+                .lessThanOrEqualTo(Task.FIELD_DELETED_AT, expired)
+                .findAll()
+                .createSnapshot();
+        final int count = Math.min(limit, tasks.size());
+        for (int i = 0; i < count; i++) {
+            final Task task = tasks.get(i);
+            final Date date = task.getDate();
+            final List<TaskList> owners = new ArrayList<>(task.getLists());
+            task.deleteFromRealm();
+            for (TaskList owner : owners) {
+                TaskListCounters.onTaskRemoved(owner, true, date);
+            }
+        }
+        return count;
+    }
+
+    private int purgeTaskLists(Date expired, int limit) {
+        final List<TaskList> taskLists = realm.where(TaskList.class)
+                .equalTo(TaskList.FIELD_DELETED, true)
+                .lessThanOrEqualTo(TaskList.FIELD_DELETED_AT, expired)
+                .findAll()
+                .createSnapshot();
+        int count = 0;
+        for (TaskList taskList : taskLists) {
+            final RealmList<Task> items = taskList.getItems();
+            while (!items.isEmpty() && count < limit) {
+                items.last().deleteFromRealm();
+                count++;
+            }
+            if (count == limit) {
+                break;
+            }
+            taskList.deleteFromRealm();
+            count++;
+        }
+        return count;
+    }
+}
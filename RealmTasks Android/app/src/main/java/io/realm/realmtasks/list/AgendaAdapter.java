@@ -0,0 +1,275 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.content.Context;
+import android.os.Handler;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import io.realm.OrderedCollectionChangeSet;
+import io.realm.OrderedRealmCollectionChangeListener;
+import io.realm.Realm;
+import io.realm.RealmResults;
+import io.realm.realmtasks.R;
+import io.realm.realmtasks.data.AgendaIndex;
+import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
+
+/**
+ * Shows the open tasks of all lists by due date, with a header for every section of the {@link AgendaIndex} that
+ * isn't empty. Changes are dispatched per row, only a task changing its section in place or a section appearing or
+ * disappearing rebinds everything.
+ */
+public class AgendaAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+
+    private static final int VIEW_TYPE_HEADER = 0;
+    private static final int VIEW_TYPE_TASK = 1;
+
+    private static final int[] SECTION_TITLES = {
+            R.string.agenda_overdue,
+            R.string.agenda_today,
+            R.string.agenda_this_week,
+            R.string.agenda_later
+    };
+
+    public interface OnTaskClickListener {
+        void onTaskClicked(Task task);
+    }
+
+    private final Context context;
+    private final RealmResults<Task> tasks;
+    private final AgendaIndex index = new AgendaIndex();
+    private final Handler handler = new Handler();
+    private final DateLabelCache dateLabels;
+    private OnTaskClickListener onTaskClickListener;
+
+    private final OrderedRealmCollectionChangeListener<RealmResults<Task>> changeListener =
+            new OrderedRealmCollectionChangeListener<RealmResults<Task>>() {
+                @Override
+                public void onChange(RealmResults<Task> results, OrderedCollectionChangeSet changeSet) {
+                    dispatchChanges(changeSet);
+                }
+            };
+    private final Runnable dayChangedRunnable = new Runnable() {
+        @Override
+        public void run() {
+            final long now = System.currentTimeMillis();
+            index.setNow(now);
+            index.rebuild(tasks);
+            // Everything is rebound anyway, which picks up the labels that changed with the day.
+            dateLabels.refresh();
+            notifyDataSetChanged();
+            scheduleDayChange(now);
+        }
+    };
+
+    /**
+     * The tasks are queried asynchronously, attach the adapter once {@link #getTasks()} is loaded.
+     */
+    public AgendaAdapter(Context context, Realm realm) {
+        this.context = context;
+        this.dateLabels = new DateLabelCache(context);
+        // Task.date is indexed, the sorted query doesn't need to look at undated tasks.
+        this.tasks = realm.where(Task.class)
+                .isNotNull(Task.FIELD_DATE)
+                .equalTo(Task.FIELD_COMPLETED, false)
+                .equalTo(Task.FIELD_DELETED, false)
+                .findAllSortedAsync(Task.FIELD_DATE);
+    }
+
+    public RealmResults<Task> getTasks() {
+        return tasks;
+    }
+
+    public void setOnTaskClickListener(OnTaskClickListener onTaskClickListener) {
+        this.onTaskClickListener = onTaskClickListener;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        if (!tasks.isValid()) {
+            return;
+        }
+        tasks.addChangeListener(changeListener);
+        final long now = System.currentTimeMillis();
+        index.setNow(now);
+        index.rebuild(tasks);
+        scheduleDayChange(now);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        handler.removeCallbacks(dayChangedRunnable);
+        if (tasks.isValid()) {
+            tasks.removeChangeListener(changeListener);
+        }
+    }
+
+    private void scheduleDayChange(long now) {
+        handler.removeCallbacks(dayChangedRunnable);
+        handler.postDelayed(dayChangedRunnable, index.millisUntilNextDay(now));
+    }
+
+    private void dispatchChanges(OrderedCollectionChangeSet changeSet) {
+        if (changeSet == null) {
+            index.rebuild(tasks);
+            notifyDataSetChanged();
+            return;
+        }
+        final AgendaIndex previous = new AgendaIndex(index);
+        if (!index.apply(tasks, changeSet) || !hasSameSections(previous, index)) {
+            notifyDataSetChanged();
+            return;
+        }
+        // Deletions are mapped with the old sections, from the bottom so the positions above stay valid. The headers
+        // stay where they are since no section becomes empty.
+        final int[] deletions = changeSet.getDeletions();
+        for (int i = deletions.length - 1; i >= 0; i--) {
+            notifyItemRemoved(adapterPosition(previous, deletions[i]));
+        }
+        for (int position : changeSet.getInsertions()) {
+            notifyItemInserted(adapterPosition(index, position));
+        }
+        for (int position : changeSet.getChanges()) {
+            notifyItemChanged(adapterPosition(index, position));
+        }
+    }
+
+    private static boolean hasSameSections(AgendaIndex left, AgendaIndex right) {
+        for (int section = 0; section < AgendaIndex.SECTION_COUNT; section++) {
+            if ((left.getCount(section) == 0) != (right.getCount(section) == 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Maps a position in the results to a position in the adapter, i.e. adds the headers shown above it.
+     */
+    private static int adapterPosition(AgendaIndex index, int position) {
+        final int section = index.sectionAt(position);
+        int headers = 0;
+        for (int i = 0; i <= section; i++) {
+            if (index.getCount(i) > 0) {
+                headers++;
+            }
+        }
+        return position + headers;
+    }
+
+    /**
+     * Returns the section if there is a header at the given adapter position, or {@code -1 - position} of the task.
+     */
+    private int resolve(int adapterPosition) {
+        int headers = 0;
+        for (int section = 0; section < AgendaIndex.SECTION_COUNT; section++) {
+            final int count = index.getCount(section);
+            if (count == 0) {
+                continue;
+            }
+            final int headerPosition = index.getFirst(section) + headers;
+            if (adapterPosition == headerPosition) {
+                return section;
+            }
+            headers++;
+            if (adapterPosition <= headerPosition + count) {
+                return -1 - (adapterPosition - headers);
+            }
+        }
+        throw new IndexOutOfBoundsException("Invalid position " + adapterPosition);
+    }
+
+    @Override
+    public int getItemCount() {
+        int count = index.getSize();
+        for (int section = 0; section < AgendaIndex.SECTION_COUNT; section++) {
+            if (index.getCount(section) > 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return resolve(position) >= 0 ? VIEW_TYPE_HEADER : VIEW_TYPE_TASK;
+    }
+
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final LayoutInflater inflater = LayoutInflater.from(parent.getContext());
+        if (viewType == VIEW_TYPE_HEADER) {
+            return new HeaderViewHolder(inflater.inflate(R.layout.item_agenda_header, parent, false));
+        }
+        return new TaskViewHolder(inflater.inflate(R.layout.item_agenda_task, parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
+        final int resolved = resolve(position);
+        if (resolved >= 0) {
+            ((HeaderViewHolder) holder).title.setText(SECTION_TITLES[resolved]);
+            return;
+        }
+        final Task task = tasks.get(-1 - resolved);
+        final TaskViewHolder taskViewHolder = (TaskViewHolder) holder;
+        taskViewHolder.text.setText(task.getText());
+        final CharSequence date = dateLabels.get(task.getDate().getTime());
+        final RealmResults<TaskList> lists = task.getLists();
+        taskViewHolder.metadata.setText(lists.isEmpty() ? date : lists.first().getText() + " \u00b7 " + date);
+    }
+
+    private static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        final TextView title;
+
+        HeaderViewHolder(View itemView) {
+            super(itemView);
+            title = itemView.findViewById(R.id.text);
+        }
+    }
+
+    private class TaskViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView text;
+        final TextView metadata;
+
+        TaskViewHolder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(R.id.text);
+            metadata = itemView.findViewById(R.id.task_metadata);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            final int position = getAdapterPosition();
+            if (position == RecyclerView.NO_POSITION || onTaskClickListener == null) {
+                return;
+            }
+            final int resolved = resolve(position);
+            if (resolved < 0) {
+                onTaskClickListener.onTaskClicked(tasks.get(-1 - resolved));
+            }
+        }
+    }
+}
@@ -17,54 +17,478 @@
 package io.realm.realmtasks.list;
 
 import android.content.Context;
+import android.support.annotation.Nullable;
 import android.support.v7.widget.RecyclerView;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
-import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.realm.OrderedCollectionChangeSet;
 import io.realm.OrderedRealmCollection;
+import io.realm.OrderedRealmCollectionChangeListener;
+import io.realm.Realm;
+import io.realm.RealmChangeListener;
 import io.realm.RealmModel;
+import io.realm.RealmObject;
 import io.realm.RealmRecyclerViewAdapter;
-import io.realm.realmtasks.R;
+import io.realm.RealmResults;
+import io.realm.realmtasks.data.RealmWriter;
+import io.realm.realmtasks.data.SortKey;
+import io.realm.realmtasks.model.Sortable;
+import io.realm.realmtasks.view.RowView;
 
-public class CommonAdapter<T extends RealmModel> extends RealmRecyclerViewAdapter<T, RecyclerView.ViewHolder> {
+/**
+ * Base adapter for the lists. Dragging a row only rearranges the rows on screen, the net move is written once when
+ * the row is dropped. That's why this adapter dispatches the Realm change notifications itself: the commit of a drop
+ * must not move rows which are already in place, and other changes arriving during a drag must not be applied to the
+ * rearranged rows.
+ * <p>
+ * Lists of {@link #WINDOWED_MIN_ITEMS} or more items are windowed: everything the adapter does besides binding a row
+ * is limited to the slice of the {@link ItemWindow} around the viewport, see {@link #isWindowed()}.
+ */
+public abstract class CommonAdapter<T extends RealmModel & Sortable>
+        extends RealmRecyclerViewAdapter<T, RecyclerView.ViewHolder> implements TouchHelperAdapter {
+
+    private static final int DRAG_STATE_IDLE = 0;
+    private static final int DRAG_STATE_DRAGGING = 1;
+    private static final int DRAG_STATE_DROPPED = 2;
+
+    static final int WINDOWED_MIN_ITEMS = 1000;
 
     protected Context context;
     protected OnFirstItemUpdateListener onFirstItemUpdateListener;
+    private OnDragCanceledListener onDragCanceledListener;
+    private OnLoadedListener onLoadedListener;
+
+    private final RealmResults<T> results;
+    private final ItemWindow window = new ItemWindow(this);
+    private final OrderedRealmCollectionChangeListener<RealmResults<T>> changeListener =
+            new OrderedRealmCollectionChangeListener<RealmResults<T>>() {
+                @Override
+                public void onChange(RealmResults<T> results, OrderedCollectionChangeSet changeSet) {
+                    dispatchChanges(changeSet);
+                }
+            };
+    private final RealmChangeListener<RealmResults<T>> loadListener = new RealmChangeListener<RealmResults<T>>() {
+        @Override
+        public void onChange(RealmResults<T> results) {
+            results.removeChangeListener(this);
+            if (onLoadedListener != null) {
+                onLoadedListener.onLoaded();
+            }
+        }
+    };
 
-    public CommonAdapter(Context context, OrderedRealmCollection<T> items) {
-        super(items, true);
+    // While dragging, the row at view position dragTo shows the item at data position dragFrom.
+    private int dragState = DRAG_STATE_IDLE;
+    private int dragFrom = RecyclerView.NO_POSITION;
+    private int dragTo = RecyclerView.NO_POSITION;
+    private T dragged;
+
+    public CommonAdapter(Context context, RealmResults<T> items) {
+        super(items, false);
         this.context = context;
+        this.results = items;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        if (results.isValid()) {
+            results.addChangeListener(changeListener);
+        }
+        window.attachToRecyclerView(recyclerView);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        if (results.isValid()) {
+            results.removeChangeListener(changeListener);
+        }
+        window.attachToRecyclerView(null);
+    }
+
+    /**
+     * Checks whether the list is long enough to be windowed. Subclasses must not touch items outside of
+     * {@link #getWindowStart()} and {@link #getWindowEnd()} then, e.g. to refresh rows, and must look up what they
+     * need from other positions on the writer thread.
+     */
+    public boolean isWindowed() {
+        return getItemCount() >= WINDOWED_MIN_ITEMS;
+    }
+
+    /**
+     * Returns the first data position of the rows which are on screen or about to be, 0 unless the list is windowed.
+     */
+    protected int getWindowStart() {
+        return isWindowed() ? window.getStart() : 0;
+    }
+
+    /**
+     * Returns the data position after the last row which is on screen or about to be, the size of the list unless it
+     * is windowed.
+     */
+    protected int getWindowEnd() {
+        return isWindowed() ? window.getEnd() : getItemCount();
+    }
+
+    /**
+     * Returns the item shown at the given view position, which differs from the data position while a row is being
+     * dragged.
+     */
+    @Nullable
+    @Override
+    public T getItem(int index) {
+        return super.getItem(dataPosition(index));
     }
 
     @Override
     public RecyclerView.ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
-        View rowItem = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_row, parent, false);
+        final View rowItem = RowPool.getInstance(parent.getContext()).obtainRow(parent);
         return new ItemViewHolder(rowItem, this);
     }
 
+    @Override
+    public void onViewRecycled(RecyclerView.ViewHolder holder) {
+        super.onViewRecycled(holder);
+        // The row goes back to the pool which is shared with the other screens.
+        ((ItemViewHolder) holder).setAdapter(null);
+    }
+
     @Override
     public void onBindViewHolder(RecyclerView.ViewHolder holder, int position) {
         final ItemViewHolder itemViewHolder = (ItemViewHolder) holder;
-        itemViewHolder.reset();
+        itemViewHolder.setAdapter(this);
+        // Rows are shared with the other screens through the RowPool, what differs between them is set on every bind.
+        final RowView row = itemViewHolder.getRow();
+        if (hasBadges()) {
+            row.setTextMarginRight(row.getDefaultTextMarginRight());
+        } else {
+            row.setTextMarginRight((int) (row.getDefaultTextMarginRight() * 0.2));
+            itemViewHolder.setBadgeVisible(false);
+        }
+        // Committing while the user is still typing rebinds the row, that must not end editing.
+        if (!itemViewHolder.isEditing()) {
+            itemViewHolder.reset();
+            itemViewHolder.setPlaceholder(window.isPlaceholder(position));
+        }
         itemViewHolder.resetBackgroundColor();
         if (onFirstItemUpdateListener != null && position == 0) {
             onFirstItemUpdateListener.updated(holder);
         }
     }
 
-    protected void moveItems(int fromPosition, int toPosition) {
-        if (fromPosition < toPosition) {
-            for (int i = fromPosition; i < toPosition; i++) {
-                Collections.swap(getData(), i, i + 1);
+    @Override
+    public void onBindViewHolder(RecyclerView.ViewHolder holder, int position, List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        final Set<Payload> merged = EnumSet.noneOf(Payload.class);
+        for (Object payload : payloads) {
+            if (!(payload instanceof Payload)) {
+                onBindViewHolder(holder, position);
+                return;
             }
+            merged.add((Payload) payload);
+        }
+        final ItemViewHolder itemViewHolder = (ItemViewHolder) holder;
+        final T item = getItem(position);
+        if (item == null || !RealmObject.isValid(item)) {
+            return;
+        }
+        onBindPayloads(itemViewHolder, item, merged);
+        if (onFirstItemUpdateListener != null && position == 0) {
+            onFirstItemUpdateListener.updated(holder);
+        }
+    }
+
+    /**
+     * Partial bind of a row which is already bound to {@code item}, only the views named by the payloads may be
+     * touched.
+     */
+    protected abstract void onBindPayloads(ItemViewHolder holder, T item, Set<Payload> payloads);
+
+    /**
+     * Returns the sort key which moves the item at {@code fromPosition} to {@code toPosition}, or {@code null} if
+     * the item doesn't need to move.
+     */
+    protected String sortKeyForMove(int fromPosition, int toPosition) {
+        final OrderedRealmCollection<T> data = getData();
+        toPosition = Math.max(0, Math.min(toPosition, data.size() - 1));
+        if (fromPosition == toPosition) {
+            return null;
+        }
+        final String before;
+        final String after;
+        if (fromPosition < toPosition) {
+            before = data.get(toPosition).getSortKey();
+            after = toPosition + 1 < data.size() ? data.get(toPosition + 1).getSortKey() : null;
         } else {
-            for (int i = fromPosition; i > toPosition; i--) {
-                Collections.swap(getData(), i, i - 1);
+            before = toPosition > 0 ? data.get(toPosition - 1).getSortKey() : null;
+            after = data.get(toPosition).getSortKey();
+        }
+        return SortKey.between(before, after);
+    }
+
+    /**
+     * Starts rearranging rows in the view only, see {@link #onItemDragged(int, int)} and {@link #finishDrag()}.
+     */
+    public void startDrag(int position) {
+        if (dragState != DRAG_STATE_IDLE) {
+            return;
+        }
+        dragState = DRAG_STATE_DRAGGING;
+        dragFrom = dragTo = position;
+        dragged = getData().get(position);
+    }
+
+    public void onItemDragged(int fromPosition, int toPosition) {
+        if (dragState != DRAG_STATE_DRAGGING || fromPosition != dragTo || toPosition < 0 || toPosition >= getItemCount()) {
+            return;
+        }
+        dragTo = toPosition;
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    /**
+     * Writes the net move of the drag with {@link #onItemMoved(int, int)}. The rows stay where they have been dropped
+     * until the write shows up in the results.
+     */
+    public void finishDrag() {
+        if (dragState != DRAG_STATE_DRAGGING) {
+            return;
+        }
+        if (dragFrom == dragTo) {
+            clearDrag();
+            return;
+        }
+        dragState = DRAG_STATE_DROPPED;
+        onItemMoved(dragFrom, dragTo);
+    }
+
+    /**
+     * Writes the sort key of a dropped item on the writer thread. The rows are put back in the order of the data if
+     * the write fails or doesn't change anything, e.g. because the item has been deleted meanwhile, as no change set
+     * would end the drop then.
+     */
+    protected void writeDrop(final Class<T> type, final String idField, final String id, final String sortKey) {
+        final AtomicBoolean written = new AtomicBoolean();
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
+            @Override
+            public void execute(Realm realm) {
+                final T item = realm.where(type).equalTo(idField, id).findFirst();
+                if (item != null && !sortKey.equals(item.getSortKey())) {
+                    item.setSortKey(sortKey);
+                    written.set(true);
+                }
+            }
+        }, new Realm.Transaction.OnSuccess() {
+            @Override
+            public void onSuccess() {
+                if (!written.get()) {
+                    cancelDrop();
+                }
+            }
+        }, new Realm.Transaction.OnError() {
+            @Override
+            public void onError(Throwable error) {
+                cancelDrop();
             }
+        });
+    }
+
+    /**
+     * Must be called if {@link #onItemMoved(int, int)} doesn't write the move of a drop, it puts the rows back in the
+     * order of the data.
+     */
+    protected void cancelDrop() {
+        if (dragState != DRAG_STATE_DROPPED) {
+            return;
+        }
+        clearDrag();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Checks whether the row shows the item created by the last {@link #onItemAdded()}.
+     */
+    public boolean isLastAdded(int position) {
+        final T item = getItem(position);
+        return item != null && RealmObject.isValid(item) && isLastAddedItem(item);
+    }
+
+    protected abstract boolean isLastAddedItem(T item);
+
+    /**
+     * Returns the title of the row at the given view position, e.g. to lay it out before the row is bound.
+     */
+    @Nullable
+    public String getTitle(int position) {
+        final T item = getItem(position);
+        return item != null && RealmObject.isValid(item) ? getItemTitle(item) : null;
+    }
+
+    protected abstract String getItemTitle(T item);
+
+    /**
+     * Returns the id of the item at the given view position, e.g. to write to it after its row has been recycled.
+     */
+    @Nullable
+    public String getKey(int position) {
+        if (position < 0 || position >= getItemCount()) {
+            return null;
+        }
+        final T item = getItem(position);
+        return item != null && RealmObject.isValid(item) ? getItemKey(item) : null;
+    }
+
+    protected abstract String getItemKey(T item);
+
+    /**
+     * Rows of lists without badges give the space of the badge to their text.
+     */
+    protected abstract boolean hasBadges();
+
+    /**
+     * Rebinds the row of the item at the given data position with a payload, see
+     * {@code onBindViewHolder()} with payloads.
+     */
+    protected void notifyDataItemChanged(int dataPosition, Object payload) {
+        notifyItemChanged(viewPosition(dataPosition), payload);
+    }
+
+    private void clearDrag() {
+        dragState = DRAG_STATE_IDLE;
+        dragFrom = dragTo = RecyclerView.NO_POSITION;
+        dragged = null;
+    }
+
+    private int dataPosition(int viewPosition) {
+        if (dragState == DRAG_STATE_IDLE || dragFrom == dragTo) {
+            return viewPosition;
+        }
+        if (viewPosition == dragTo) {
+            return dragFrom;
+        }
+        if (dragFrom < dragTo && viewPosition >= dragFrom && viewPosition < dragTo) {
+            return viewPosition + 1;
+        }
+        if (dragFrom > dragTo && viewPosition > dragTo && viewPosition <= dragFrom) {
+            return viewPosition - 1;
         }
+        return viewPosition;
+    }
+
+    private int viewPosition(int dataPosition) {
+        if (dragState == DRAG_STATE_IDLE || dragFrom == dragTo) {
+            return dataPosition;
+        }
+        if (dataPosition == dragFrom) {
+            return dragTo;
+        }
+        if (dragFrom < dragTo && dataPosition > dragFrom && dataPosition <= dragTo) {
+            return dataPosition - 1;
+        }
+        if (dragFrom > dragTo && dataPosition >= dragTo && dataPosition < dragFrom) {
+            return dataPosition + 1;
+        }
+        return dataPosition;
+    }
+
+    private void dispatchChanges(OrderedCollectionChangeSet changeSet) {
+        if (changeSet == null) {
+            cancelDrag();
+            notifyDataSetChanged();
+            return;
+        }
+        final int[] deletions = changeSet.getDeletions();
+        final int[] insertions = changeSet.getInsertions();
+        if (dragState == DRAG_STATE_DROPPED && isDropCommitted(deletions, insertions)) {
+            // The rows are in place already and their colors are drawn by position, nothing to rebind.
+            clearDrag();
+            for (int index : changeSet.getChanges()) {
+                notifyItemChanged(index, Payload.CONTENT);
+            }
+            return;
+        }
+        if (dragState != DRAG_STATE_IDLE) {
+            if (deletions.length == 0 && insertions.length == 0) {
+                for (int index : changeSet.getChanges()) {
+                    notifyItemChanged(viewPosition(index), Payload.CONTENT);
+                }
+            } else {
+                // The order changed behind our back (e.g. a remote change), start over from the data.
+                cancelDrag();
+                notifyDataSetChanged();
+            }
+            return;
+        }
+        final OrderedCollectionChangeSet.Range[] deletionRanges = changeSet.getDeletionRanges();
+        for (int i = deletionRanges.length - 1; i >= 0; i--) {
+            notifyItemRangeRemoved(deletionRanges[i].startIndex, deletionRanges[i].length);
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getInsertionRanges()) {
+            notifyItemRangeInserted(range.startIndex, range.length);
+        }
+        for (OrderedCollectionChangeSet.Range range : changeSet.getChangeRanges()) {
+            notifyItemRangeChanged(range.startIndex, range.length, Payload.CONTENT);
+        }
+    }
+
+    /**
+     * Checks whether the results now have the order the rows have been dropped in: the dragged item is at its drop
+     * position and nothing outside of the dragged over rows moved.
+     */
+    private boolean isDropCommitted(int[] deletions, int[] insertions) {
+        if (deletions.length == 0 || deletions.length != insertions.length) {
+            return false;
+        }
+        final int start = Math.min(dragFrom, dragTo);
+        final int end = Math.max(dragFrom, dragTo);
+        for (int i = 0; i < deletions.length; i++) {
+            if (deletions[i] < start || deletions[i] > end || insertions[i] < start || insertions[i] > end) {
+                return false;
+            }
+        }
+        final OrderedRealmCollection<T> data = getData();
+        return dragTo < data.size() && data.get(dragTo).equals(dragged);
+    }
+
+    private void cancelDrag() {
+        final boolean dragging = dragState == DRAG_STATE_DRAGGING;
+        clearDrag();
+        if (dragging && onDragCanceledListener != null) {
+            onDragCanceledListener.onDragCanceled();
+        }
+    }
+
+    /**
+     * The listener is called once the results of the adapter have been loaded, right away if they already are.
+     */
+    public void setOnLoadedListener(OnLoadedListener onLoadedListener) {
+        this.onLoadedListener = onLoadedListener;
+        if (!results.isValid()) {
+            return;
+        }
+        results.removeChangeListener(loadListener);
+        if (onLoadedListener == null) {
+            return;
+        }
+        if (results.isLoaded()) {
+            onLoadedListener.onLoaded();
+        } else {
+            results.addChangeListener(loadListener);
+        }
+    }
+
+    public void setOnDragCanceledListener(OnDragCanceledListener onDragCanceledListener) {
+        this.onDragCanceledListener = onDragCanceledListener;
     }
 
     public void setOnFirstItemUpdateListener(OnFirstItemUpdateListener onFirstItemUpdateListener) {
@@ -74,4 +498,12 @@ public class CommonAdapter<T extends RealmModel> extends RealmRecyclerViewAdapte
     public interface OnFirstItemUpdateListener {
         void updated(RecyclerView.ViewHolder viewHolder);
     }
+
+    public interface OnDragCanceledListener {
+        void onDragCanceled();
+    }
+
+    public interface OnLoadedListener {
+        void onLoaded();
+    }
 }
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.content.Context;
+import android.support.v4.util.LruCache;
+import android.text.TextUtils;
+import android.text.format.DateFormat;
+import android.text.format.DateUtils;
+
+import java.util.Calendar;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Caches the labels of due dates ("Tomorrow, 5:00 PM"), as {@link DateUtils#getRelativeDateTimeString} formats them
+ * with a resolution of days and relative labels up to a week away. A label is kept until the next boundary which can
+ * change it: local midnight, or the moment the date gets more or less than a week away and the label turns from
+ * relative to absolute. Everything is dropped when the locale, the time zone or the 24 hour setting changes.
+ * <p>
+ * Only the most recently bound dates are kept, a long scroll through old tasks doesn't grow the cache.
+ */
+class DateLabelCache {
+
+    private static final int MAX_ENTRIES = 256;
+
+    private final Context context;
+    private final LruCache<Long, Entry> entries = new LruCache<>(MAX_ENTRIES);
+    private Locale locale;
+    private String timeZoneId;
+    private boolean is24Hour;
+    private boolean configurationChanged;
+    private long nextMidnight;
+    private long nextExpiry;
+
+    DateLabelCache(Context context) {
+        this.context = context;
+        checkConfiguration();
+        configurationChanged = false;
+        nextExpiry = Long.MAX_VALUE;
+    }
+
+    CharSequence get(long time) {
+        checkConfiguration();
+        final long now = System.currentTimeMillis();
+        Entry entry = entries.get(time);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(time, entry);
+        } else if (entry.expiry > now) {
+            return entry.label;
+        }
+        update(entry, time, now);
+        return entry.label;
+    }
+
+    /**
+     * Returns when the first cached label expires, {@link Long#MAX_VALUE} if none does.
+     */
+    long getNextExpiry() {
+        return nextExpiry;
+    }
+
+    /**
+     * Formats the expired labels again and returns the dates whose label actually changed, or {@code null} if all
+     * labels might have changed since the last refresh.
+     */
+    Set<Long> refresh() {
+        checkConfiguration();
+        final boolean all = configurationChanged;
+        configurationChanged = false;
+        final long now = System.currentTimeMillis();
+        final Set<Long> changed = new HashSet<>();
+        nextExpiry = Long.MAX_VALUE;
+        for (Map.Entry<Long, Entry> cached : entries.snapshot().entrySet()) {
+            final Entry entry = cached.getValue();
+            if (entry.expiry <= now) {
+                final CharSequence previous = entry.label;
+                update(entry, cached.getKey(), now);
+                if (!TextUtils.equals(previous, entry.label)) {
+                    changed.add(cached.getKey());
+                }
+            } else {
+                nextExpiry = Math.min(nextExpiry, entry.expiry);
+            }
+        }
+        return all ? null : changed;
+    }
+
+    private void update(Entry entry, long time, long now) {
+        entry.label = DateUtils.getRelativeDateTimeString(
+                context, time, DateUtils.DAY_IN_MILLIS, DateUtils.WEEK_IN_MILLIS, 0);
+        entry.expiry = Math.min(getNextMidnight(now), weekBoundary(time, now));
+        nextExpiry = Math.min(nextExpiry, entry.expiry);
+    }
+
+    private long getNextMidnight(long now) {
+        if (now >= nextMidnight) {
+            final Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(now);
+            calendar.set(Calendar.HOUR_OF_DAY, 0);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            calendar.set(Calendar.MILLISECOND, 0);
+            calendar.add(Calendar.DAY_OF_MONTH, 1);
+            nextMidnight = calendar.getTimeInMillis();
+        }
+        return nextMidnight;
+    }
+
+    /**
+     * Returns when the date next gets closer or further than a week, {@link Long#MAX_VALUE} if it doesn't anymore.
+     */
+    private static long weekBoundary(long time, long now) {
+        if (now <= time - DateUtils.WEEK_IN_MILLIS) {
+            return time - DateUtils.WEEK_IN_MILLIS + 1;
+        }
+        if (now < time + DateUtils.WEEK_IN_MILLIS) {
+            return time + DateUtils.WEEK_IN_MILLIS;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * Drops all labels if the formatting changed since they have been cached. The next expiry is due right away, so
+     * the rows bound with the old formatting are refreshed as well.
+     */
+    private void checkConfiguration() {
+        final Locale locale = Locale.getDefault();
+        final String timeZoneId = TimeZone.getDefault().getID();
+        final boolean is24Hour = DateFormat.is24HourFormat(context);
+        if (locale.equals(this.locale) && timeZoneId.equals(this.timeZoneId) && is24Hour == this.is24Hour) {
+            return;
+        }
+        this.locale = locale;
+        this.timeZoneId = timeZoneId;
+        this.is24Hour = is24Hour;
+        entries.evictAll();
+        configurationChanged = true;
+        nextMidnight = 0;
+        nextExpiry = 0;
+    }
+
+    private static class Entry {
+        CharSequence label;
+        long expiry;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+/**
+ * Draws the list gradient behind all rows in one pass, so rows don't own their color and inserting or moving rows
+ * doesn't rebind the rows whose color changed. Rows which set a background of their own (completed, dragged, ...)
+ * are skipped.
+ */
+class GradientDecoration extends RecyclerView.ItemDecoration {
+
+    private final TouchHelperAdapter adapter;
+    private final Paint paint = new Paint();
+
+    GradientDecoration(TouchHelperAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    @Override
+    public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            final View child = parent.getChildAt(i);
+            final RecyclerView.ViewHolder holder = parent.getChildViewHolder(child);
+            if (!(holder instanceof ItemViewHolder)) {
+                continue;
+            }
+            final ItemViewHolder itemViewHolder = (ItemViewHolder) holder;
+            final View row = itemViewHolder.getRow();
+            if (itemViewHolder.hasOwnBackground() || holder.getLayoutPosition() == RecyclerView.NO_POSITION) {
+                continue;
+            }
+            // Follows the row through swipes and item animations.
+            final float left = child.getLeft() + child.getTranslationX() + row.getLeft() + row.getTranslationX();
+            final float top = child.getTop() + child.getTranslationY() + row.getTop();
+            paint.setColor(adapter.generatedRowColor(holder.getLayoutPosition()));
+            paint.setAlpha((int) (255 * child.getAlpha()));
+            c.drawRect(left, top, left + row.getWidth(), top + row.getHeight(), paint);
+        }
+    }
+}
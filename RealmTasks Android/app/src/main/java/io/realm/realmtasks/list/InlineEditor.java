@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+import android.view.inputmethod.InputMethodManager;
+import android.widget.EditText;
+
+import io.realm.realmtasks.R;
+import io.realm.realmtasks.view.RowView;
+
+/**
+ * The one text editor of a list. It floats above the row which is being edited, next to the recycler view, so rows
+ * only need read-only views. The row keeps the edited text as its hidden title, which gives it the height of the
+ * editor.
+ * <p>
+ * While editing, the text is committed through the {@link OnEditCommitListener} once typing pauses and once more
+ * when editing ends, but only if it actually changed. Commits carry the id of the item, which is looked up when
+ * editing begins, so the text is still written after the row has been recycled.
+ */
+class InlineEditor implements TextWatcher, ViewTreeObserver.OnPreDrawListener {
+
+    // Typing pauses longer than this commit the text, even if the user is still editing.
+    private static final long EDIT_IDLE_TIMEOUT = 2000;
+
+    private final RecyclerView recyclerView;
+    private final ViewGroup parent;
+    private final EditText editText;
+    private final CommonAdapter adapter;
+    private final OnEditCommitListener onEditCommitListener;
+    private final Runnable commitRunnable = new Runnable() {
+        @Override
+        public void run() {
+            commit();
+        }
+    };
+    private ItemViewHolder holder;
+    private String itemId;
+    private String committedText;
+
+    InlineEditor(RecyclerView recyclerView, CommonAdapter adapter, OnEditCommitListener onEditCommitListener) {
+        this.recyclerView = recyclerView;
+        this.adapter = adapter;
+        this.onEditCommitListener = onEditCommitListener;
+        parent = (ViewGroup) recyclerView.getParent();
+        editText = (EditText) LayoutInflater.from(recyclerView.getContext())
+                .inflate(R.layout.view_inline_editor, parent, false);
+        parent.addView(editText, parent.indexOfChild(recyclerView) + 1);
+    }
+
+    void destroy() {
+        end();
+        parent.removeView(editText);
+    }
+
+    /**
+     * Returns the row which is being edited, or {@code null}.
+     */
+    ItemViewHolder getHolder() {
+        return holder;
+    }
+
+    void begin(ItemViewHolder holder) {
+        if (this.holder == holder) {
+            return;
+        }
+        end();
+        this.holder = holder;
+        itemId = adapter.getKey(holder.getAdapterPosition());
+        final RowView row = holder.getRow();
+        committedText = row.getText().toString();
+        holder.setEditing(true);
+        editText.setText(committedText);
+        editText.setSelection(committedText.length());
+        // Wraps the text where the row wraps it, so the row and the editor are always equally high.
+        final ViewGroup.LayoutParams params = editText.getLayoutParams();
+        params.width = row.getTextWidth();
+        editText.setLayoutParams(params);
+        editText.setVisibility(View.VISIBLE);
+        editText.addTextChangedListener(this);
+        recyclerView.getViewTreeObserver().addOnPreDrawListener(this);
+        followRow();
+        editText.requestFocus();
+        getInputMethodManager().showSoftInput(editText, InputMethodManager.SHOW_IMPLICIT);
+    }
+
+    void end() {
+        if (holder == null) {
+            return;
+        }
+        recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+        editText.removeTextChangedListener(this);
+        editText.removeCallbacks(commitRunnable);
+        commit();
+        holder.setEditing(false);
+        holder = null;
+        itemId = null;
+        getInputMethodManager().hideSoftInputFromWindow(editText.getWindowToken(), 0);
+        editText.clearFocus();
+        editText.setVisibility(View.GONE);
+    }
+
+    private void commit() {
+        final String editedText = editText.getText().toString();
+        if (editedText.equals(committedText) || itemId == null) {
+            return;
+        }
+        committedText = editedText;
+        onEditCommitListener.onEditCommitted(itemId, editedText);
+    }
+
+    /**
+     * Moves the editor over the text of the row. Only translations change, the editor isn't laid out again while the
+     * list scrolls or animates.
+     */
+    private void followRow() {
+        if (holder.itemView.getParent() != recyclerView) {
+            // Scrolled out of the list, there is nothing left to edit.
+            end();
+            return;
+        }
+        final RowView row = holder.getRow();
+        float x = row.getTextLeft();
+        float y = row.getTextTop();
+        for (View view = row; view != parent; view = (View) view.getParent()) {
+            x += view.getLeft() + view.getTranslationX();
+            y += view.getTop() + view.getTranslationY();
+        }
+        editText.setTranslationX(x - editText.getLeft());
+        editText.setTranslationY(y - editText.getTop());
+    }
+
+    private InputMethodManager getInputMethodManager() {
+        return (InputMethodManager) editText.getContext().getSystemService(Context.INPUT_METHOD_SERVICE);
+    }
+
+    @Override
+    public boolean onPreDraw() {
+        if (holder != null) {
+            followRow();
+        }
+        return true;
+    }
+
+    @Override
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+    }
+
+    @Override
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+    }
+
+    @Override
+    public void afterTextChanged(Editable s) {
+        holder.setText(s.toString());
+        editText.removeCallbacks(commitRunnable);
+        editText.postDelayed(commitRunnable, EDIT_IDLE_TIMEOUT);
+    }
+
+    interface OnEditCommitListener {
+        void onEditCommitted(String id, String text);
+    }
+}
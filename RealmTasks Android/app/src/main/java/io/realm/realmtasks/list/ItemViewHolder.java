@@ -16,28 +16,18 @@
 
 package io.realm.realmtasks.list;
 
-import android.content.Context;
-import android.graphics.Paint;
 import android.support.annotation.ColorInt;
 import android.support.v4.content.ContextCompat;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.RecyclerView;
-import android.text.SpannableStringBuilder;
-import android.text.Spanned;
-import android.text.TextUtils;
-import android.text.style.CharacterStyle;
-import android.text.style.ForegroundColorSpan;
-import android.text.style.StrikethroughSpan;
 import android.view.View;
 import android.view.animation.AlphaAnimation;
 import android.view.animation.RotateAnimation;
-import android.view.inputmethod.InputMethodManager;
-import android.widget.EditText;
 import android.widget.ImageView;
-import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
-import android.widget.TextView;
 
 import io.realm.realmtasks.R;
+import io.realm.realmtasks.view.RowView;
 
 public class ItemViewHolder extends RecyclerView.ViewHolder {
 
@@ -53,16 +43,18 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
     private final int metadataCellCompletedColor;
 
     private final RelativeLayout iconBar;
-    private final RelativeLayout row = itemView.findViewById(R.id.row);
+    private final RowView row = itemView.findViewById(R.id.row);
     private final RelativeLayout hintPanel;
-    private final View metadataRow;
     private final ImageView arrow;
-    private final EditText editText;
-    private final TextView badge;
-    private final TextView text;
-    private final TextView metadata;
-    private final RecyclerView.Adapter adapter;
+    private RecyclerView.Adapter adapter;
+    private final AlphaAnimation hintAlphaAnimation = new AlphaAnimation(0.2f, 1.0f);
+    private final RotateAnimation arrowRotateAnimation = new RotateAnimation(
+            -90, 0, RotateAnimation.RELATIVE_TO_SELF, 0.5f, RotateAnimation.RELATIVE_TO_SELF, 0.5f);
     private boolean completed;
+    private boolean editing;
+    private boolean badgeVisible;
+    private int badgeCount;
+    private boolean backgroundPinned;
     private boolean shouldChangeBackgroundColor;
     private boolean shouldChangeTextColor;
     private int previousFirstLength;
@@ -71,12 +63,7 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         super(itemView);
         iconBar = itemView.findViewById(R.id.icon_bar);
         hintPanel = itemView.findViewById(R.id.hint_panel);
-        metadataRow = itemView.findViewById(R.id.row_metadata);
         arrow = hintPanel.findViewById(R.id.arrow);
-        badge = row.findViewById(R.id.badge);
-        text = row.findViewById(R.id.text);
-        metadata = row.findViewById(R.id.task_metadata);
-        editText = row.findViewById(R.id.edit_text);
         cellUnusedColor = ContextCompat.getColor(itemView.getContext(), R.color.cell_unused_color);
         cellCompletedColor = ContextCompat.getColor(itemView.getContext(), R.color.cell_completed_color);
         cellCompletedBackgroundColor = ContextCompat.getColor(itemView.getContext(), R.color.cell_completed_background_color);
@@ -84,8 +71,16 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         metadataCellCompletedColor = ContextCompat.getColor(itemView.getContext(), R.color.cell_default_metadata_color);
         shouldChangeBackgroundColor = true;
         shouldChangeTextColor = true;
-        metadataRow.setVisibility(View.GONE);
         previousFirstLength = -1;
+        hintAlphaAnimation.setDuration(150);
+        arrowRotateAnimation.setDuration(500);
+        this.adapter = adapter;
+    }
+
+    /**
+     * Rows are shared between the screens through the {@link RowPool}, the adapter changes with every screen.
+     */
+    void setAdapter(RecyclerView.Adapter adapter) {
         this.adapter = adapter;
     }
 
@@ -102,85 +97,98 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
             return;
         }
         this.completed = completed;
-        int paintFlags = text.getPaintFlags();
+        // A swipe might have struck through part of the text, the paint flag covers all of it from now on.
+        row.clearStrikeThrough();
+        previousFirstLength = -1;
         if (completed) {
-            text.setTextColor(cellCompletedColor);
-            text.setPaintFlags(paintFlags | Paint.STRIKE_THRU_TEXT_FLAG);
-            metadata.setTextColor(cellCompletedColor);
-            metadata.setPaintFlags(paintFlags | Paint.STRIKE_THRU_TEXT_FLAG);
-            row.setBackgroundColor(cellCompletedBackgroundColor);
+            row.setTextColor(cellCompletedColor);
+            row.setMetadataColor(cellCompletedColor);
         } else {
-            if (badge.getVisibility() == View.VISIBLE && badge.getText().equals("0")) {
-                text.setTextColor(cellCompletedColor);
-                metadata.setTextColor(cellCompletedColor);
+            if (badgeVisible && badgeCount == 0) {
+                row.setTextColor(cellCompletedColor);
+                row.setMetadataColor(cellCompletedColor);
             } else {
-                text.setTextColor(cellDefaultColor);
-                metadata.setTextColor(metadataCellCompletedColor);
+                row.setTextColor(cellDefaultColor);
+                row.setMetadataColor(metadataCellCompletedColor);
             }
-            text.setPaintFlags(paintFlags & ~Paint.STRIKE_THRU_TEXT_FLAG);
-            metadata.setPaintFlags(paintFlags & ~Paint.STRIKE_THRU_TEXT_FLAG);
-            row.setBackgroundColor(generateBackgroundColor());
         }
+        row.setStruckThrough(completed);
+        applyBackground();
         shouldChangeTextColor = false;
     }
 
-    public boolean getCompleted() {
-        return completed;
+    /**
+     * The gradient of open rows is drawn by {@link GradientDecoration}. A pinned row paints its gradient color itself
+     * instead, for transformations the decoration can't follow (dragging, the pull to add fold).
+     */
+    public void setBackgroundPinned(boolean pinned) {
+        backgroundPinned = pinned;
+        applyBackground();
     }
 
-    public void setEditable(boolean set) {
-        if (set) {
-            if (isEditable() == false) {
-                editText.setText(text.getText().toString());
-            }
-            hideReadOnlyTaskText();
-            editText.setVisibility(View.VISIBLE);
-            editText.requestFocus();
-            final Context context = editText.getContext();
-            final InputMethodManager inputMethodManager =
-                    (InputMethodManager) context.getSystemService(Context.INPUT_METHOD_SERVICE);
-            inputMethodManager.showSoftInput(editText, InputMethodManager.SHOW_IMPLICIT);
+    public boolean hasOwnBackground() {
+        return row.getBackground() != null;
+    }
 
+    private void applyBackground() {
+        if (completed) {
+            row.setBackgroundColor(cellCompletedBackgroundColor);
+        } else if (backgroundPinned) {
+            row.setBackgroundColor(generateBackgroundColor());
         } else {
-            if (isEditable() == true) {
-                text.setText(editText.getText().toString());
-            }
-            showReadOnlyTaskText();
-            editText.setVisibility(View.GONE);
+            ViewCompat.setBackground(row, null);
         }
     }
 
-    private void hideReadOnlyTaskText() {
-        text.setVisibility(View.GONE);
-        metadataRow.setVisibility(View.GONE);
-        metadata.setText(""); // clear the metadata text if we're hiding and showing the edit text.  It will need to be reparsed.
+    public boolean getCompleted() {
+        return completed;
     }
-    
-    private void showReadOnlyTaskText() {
-        text.setVisibility(View.VISIBLE);
+
+    /**
+     * Marks the row as being edited by the {@link InlineEditor} on top of it. The text stays laid out but invisible,
+     * it follows the edited text and keeps the row as high as the editor.
+     */
+    void setEditing(boolean editing) {
+        this.editing = editing;
+        row.setTextVisible(!editing);
+        if (editing) {
+            row.setPlaceholder(false);
+            row.setMetadata(null); // clear the metadata text while editing.  It will need to be reparsed.
+        }
+    }
+
+    public boolean isEditing() {
+        return editing;
     }
-    
-    public boolean isEditable() {
-        return editText.getVisibility() == View.VISIBLE;
+
+    /**
+     * See {@link RowView#setPlaceholder(boolean)}, placeholder rows are filled in by the {@link ItemWindow}.
+     */
+    void setPlaceholder(boolean placeholder) {
+        row.setPlaceholder(placeholder);
+    }
+
+    public boolean isPlaceholder() {
+        return row.isPlaceholder();
     }
 
     public void setBadgeVisible(boolean visible) {
-        if (visible) {
-            badge.setVisibility(View.VISIBLE);
-        } else {
-            badge.setVisibility(View.GONE);
-        }
+        badgeVisible = visible;
+        row.setBadge(visible ? Integer.toString(badgeCount) : null);
         shouldChangeTextColor = true;
     }
 
     public void setBadgeCount(int count) {
-        badge.setText(Integer.toString(count));
+        badgeCount = count;
+        if (badgeVisible) {
+            row.setBadge(Integer.toString(count));
+        }
         if (count == 0) {
-            text.setTextColor(cellCompletedColor);
-            badge.setTextColor(cellCompletedColor);
+            row.setTextColor(cellCompletedColor);
+            row.setBadgeTextColor(cellCompletedColor);
         } else {
-            text.setTextColor(cellDefaultColor);
-            badge.setTextColor(cellDefaultColor);
+            row.setTextColor(cellDefaultColor);
+            row.setBadgeTextColor(cellDefaultColor);
         }
         shouldChangeTextColor = true;
     }
@@ -193,21 +201,15 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         }
         if (visible) {
             hintPanel.setVisibility(View.VISIBLE);
-            final AlphaAnimation alphaAnimation = new AlphaAnimation(0.2f, 1.0f);
-            alphaAnimation.setDuration(150);
-            hintPanel.setAnimation(alphaAnimation);
-            final RotateAnimation rotateAnimation = new RotateAnimation(
-                    -90, 0, RotateAnimation.RELATIVE_TO_SELF, 0.5f, RotateAnimation.RELATIVE_TO_SELF, 0.5f);
-            rotateAnimation.setDuration(500);
-            arrow.startAnimation(rotateAnimation);
+            hintPanel.startAnimation(hintAlphaAnimation);
+            arrow.startAnimation(arrowRotateAnimation);
         } else {
             hintPanel.setVisibility(View.GONE);
         }
     }
 
     public void reset() {
-        showReadOnlyTaskText();
-        editText.setVisibility(View.GONE);
+        setEditing(false);
         itemView.setTranslationX(0);
         itemView.setTranslationY(0);
         itemView.setRotationX(0);
@@ -216,41 +218,40 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         setIconBarAlpha(1f);
         setCompleted(false);
         setHintPanelVisible(false);
+        backgroundPinned = false;
+        applyBackground();
         shouldChangeBackgroundColor = true;
         shouldChangeTextColor = true;
+        row.clearStrikeThrough();
         previousFirstLength = -1;
     }
 
     public void resetBackgroundColor() {
-        row.setBackgroundColor(generateBackgroundColor());
+        applyBackground();
     }
 
-    public RelativeLayout getRow() {
+    public RowView getRow() {
         return row;
     }
 
-    public TextView getBadge() {
-        return badge;
+    public CharSequence getText() {
+        return row.getText();
     }
 
-    public TextView getText() {
-        return text;
+    /**
+     * Sets the text unless the row shows it already. The row is only laid out again if the text needs more or less
+     * lines.
+     */
+    public void setText(CharSequence value) {
+        row.setText(value);
     }
 
     public void setMetadataText(CharSequence text) {
-        if(TextUtils.isEmpty(text)) {
-            metadata.setText("");
-            metadataRow.setVisibility(View.GONE);
-        } else {
-            metadata.setText(text);
-            metadataRow.setVisibility(View.VISIBLE);
+        if (!editing) {
+            row.setMetadata(text);
         }
     }
 
-    public EditText getEditText() {
-        return editText;
-    }
-
     public void setIconBarAlpha(float alpha) {
         iconBar.setAlpha(alpha);
     }
@@ -271,13 +272,16 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         if (shouldChangeBackgroundColor) {
             return;
         }
-        row.setBackgroundColor(generateBackgroundColor());
+        applyBackground();
         shouldChangeBackgroundColor = true;
     }
 
+    /**
+     * Strikes through the text as far as a swipe went. Called for every frame of the swipe, so it only moves the line
+     * drawn by the row and neither allocates nor changes the text.
+     */
     public void setStrikeThroughRatio(float strikeThroughRatio) {
-        final CharSequence text = this.text.getText();
-        final int textLength = text.length();
+        final int textLength = row.getText().length();
         int firstLength = (int) (textLength * strikeThroughRatio);
         if (firstLength > textLength) {
             firstLength = textLength;
@@ -287,22 +291,16 @@ public class ItemViewHolder extends RecyclerView.ViewHolder {
         if (firstLength == previousFirstLength) {
             return;
         }
+        if (previousFirstLength == -1 && completed) {
+            // Completed text is struck through by its paint, during the swipe only the part not swiped yet is.
+            row.setStruckThrough(false);
+        }
         previousFirstLength = firstLength;
-        final int appendedLength = textLength - firstLength;
-        final SpannableStringBuilder stringBuilder = new SpannableStringBuilder(text, 0, textLength);
-        stringBuilder.clearSpans();
-        this.text.setPaintFlags(this.text.getPaintFlags() & ~Paint.STRIKE_THRU_TEXT_FLAG);
-        final CharacterStyle firstCharStyle, secondCharStyle;
         if (completed) {
-            firstCharStyle = new ForegroundColorSpan(cellCompletedColor);
-            secondCharStyle = new StrikethroughSpan();
+            row.setStrikeThrough(firstLength, textLength);
         } else {
-            firstCharStyle = new StrikethroughSpan();
-            secondCharStyle = new ForegroundColorSpan(cellDefaultColor);
+            row.setStrikeThrough(0, firstLength);
         }
-        stringBuilder.setSpan(firstCharStyle, 0, firstLength, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        stringBuilder.setSpan(secondCharStyle, textLength - appendedLength, textLength, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
-        this.text.setText(stringBuilder);
     }
 
     public static class ColorHelper {
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.realm.realmtasks.list;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.SparseBooleanArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded slice of a long list around the viewport, see {@link CommonAdapter#isWindowed()}. The slice is made of
+ * pages of {@link #PAGE_SIZE} rows, the titles of a page are laid out together on the background thread of the
+ * {@link io.realm.realmtasks.view.TextLayoutCache} when it enters the slice. Rows bound while the list is scrolling
+ * and whose page isn't loaded yet are placeholders until it is, so a fling through thousands of rows doesn't lay out
+ * text on the UI thread. Pages which leave the slice are forgotten, the slice has the same size for any list size.
+ */
+class ItemWindow extends RecyclerView.OnScrollListener {
+
+    static final int PAGE_SIZE = 40;
+    // Pages kept on each side of the visible ones.
+    private static final int MARGIN_PAGES = 1;
+
+    private final CommonAdapter adapter;
+    // Pages in the slice, true once loaded.
+    private final SparseBooleanArray pages = new SparseBooleanArray();
+    private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            invalidate();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            invalidate();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            invalidate();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            invalidate();
+        }
+    };
+    private RecyclerView recyclerView;
+    // Loads which finish after the rows moved fill in the wrong page, they are dropped.
+    private int generation;
+
+    ItemWindow(CommonAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    void attachToRecyclerView(RecyclerView recyclerView) {
+        if (this.recyclerView != null) {
+            this.recyclerView.removeOnScrollListener(this);
+            adapter.unregisterAdapterDataObserver(dataObserver);
+            fillInPlaceholders(0, Integer.MAX_VALUE);
+        }
+        this.recyclerView = recyclerView;
+        generation++;
+        pages.clear();
+        if (recyclerView != null) {
+            recyclerView.addOnScrollListener(this);
+            adapter.registerAdapterDataObserver(dataObserver);
+        }
+    }
+
+    /**
+     * Returns the first data position of the slice.
+     */
+    int getStart() {
+        return getFirstPage() * PAGE_SIZE;
+    }
+
+    /**
+     * Returns the data position after the last row of the slice.
+     */
+    int getEnd() {
+        return Math.min((getLastPage() + 1) * PAGE_SIZE, adapter.getItemCount());
+    }
+
+    /**
+     * Checks whether the row at the given position should be bound as a placeholder. Rows are only bound as
+     * placeholders while the list is scrolling, everything else, e.g. the first layout or a change, fills them in.
+     */
+    boolean isPlaceholder(int position) {
+        return adapter.isWindowed()
+                && recyclerView != null
+                && recyclerView.getScrollState() != RecyclerView.SCROLL_STATE_IDLE
+                && !pages.get(position / PAGE_SIZE);
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        update();
+    }
+
+    @Override
+    public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            // The few rows left are filled in right away, the list doesn't wait for the background thread at rest.
+            fillInPlaceholders(0, Integer.MAX_VALUE);
+        }
+    }
+
+    private void invalidate() {
+        generation++;
+        pages.clear();
+        update();
+    }
+
+    private void update() {
+        if (recyclerView == null) {
+            return;
+        }
+        if (!adapter.isWindowed()) {
+            pages.clear();
+            return;
+        }
+        final int firstPage = getFirstPage();
+        final int lastPage = getLastPage();
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            final int page = pages.keyAt(i);
+            if (page < firstPage || page > lastPage) {
+                pages.removeAt(i);
+            }
+        }
+        for (int page = firstPage; page <= lastPage; page++) {
+            if (pages.indexOfKey(page) < 0) {
+                load(page);
+            }
+        }
+    }
+
+    private int getFirstPage() {
+        final int first = findVisiblePosition(true);
+        return Math.max(0, first / PAGE_SIZE - MARGIN_PAGES);
+    }
+
+    private int getLastPage() {
+        final int last = findVisiblePosition(false);
+        final int lastPage = (adapter.getItemCount() - 1) / PAGE_SIZE;
+        return Math.min(last / PAGE_SIZE + MARGIN_PAGES, lastPage);
+    }
+
+    private int findVisiblePosition(boolean first) {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return 0;
+        }
+        final LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        final int position = first
+                ? layoutManager.findFirstVisibleItemPosition()
+                : layoutManager.findLastVisibleItemPosition();
+        return position == RecyclerView.NO_POSITION ? 0 : position;
+    }
+
+    private void load(final int page) {
+        if (recyclerView.getChildCount() == 0) {
+            return;
+        }
+        pages.put(page, false);
+        final int start = page * PAGE_SIZE;
+        final int end = Math.min(start + PAGE_SIZE, adapter.getItemCount());
+        final List<String> titles = new ArrayList<>(end - start);
+        for (int position = start; position < end; position++) {
+            final String title = adapter.getTitle(position);
+            if (title != null) {
+                titles.add(title);
+            }
+        }
+        final int current = generation;
+        // Any row lays the titles out like the rows they are going to be bound to.
+        final ItemViewHolder sample = (ItemViewHolder) recyclerView.getChildViewHolder(recyclerView.getChildAt(0));
+        sample.getRow().prefetch(titles, new Runnable() {
+            @Override
+            public void run() {
+                if (current != generation || pages.indexOfKey(page) < 0) {
+                    return;
+                }
+                pages.put(page, true);
+                fillInPlaceholders(start, end);
+            }
+        });
+    }
+
+    private void fillInPlaceholders(int start, int end) {
+        for (int i = 0; i < recyclerView.getChildCount(); i++) {
+            final RecyclerView.ViewHolder holder = recyclerView.getChildViewHolder(recyclerView.getChildAt(i));
+            final int position = holder.getAdapterPosition();
+            if (holder instanceof ItemViewHolder && position >= start && position < end) {
+                ((ItemViewHolder) holder).setPlaceholder(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+/**
+ * Change payloads for {@link CommonAdapter} rows. A row rebound with payloads only touches the views named by them,
+ * see {@link CommonAdapter#onBindPayloads(ItemViewHolder, io.realm.RealmModel, java.util.Set)}.
+ */
+public enum Payload {
+    TEXT,
+    COMPLETED,
+    DATE,
+    BADGE,
+    /**
+     * The item changed in the data but it isn't known which fields did. Every field is compared with what the row
+     * shows and only the views which differ are updated.
+     */
+    CONTENT
+}
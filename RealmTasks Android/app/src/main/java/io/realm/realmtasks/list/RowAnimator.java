@@ -0,0 +1,246 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.RecyclerView;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the transitions of swiped rows with property animators. Transitions started during a frame are batched and
+ * begin together on the next animation frame, and the animated views are drawn from hardware layers while they move,
+ * so completing many rows in a row doesn't redraw their content for every frame.
+ * <p>
+ * A transition belongs to a row, its end action runs once all of its animators finished and after the row has been
+ * released, the next transition of a chain is started afterwards. Cancelling a transition skips its end action and
+ * the rest of its chain.
+ */
+class RowAnimator {
+
+    private final RecyclerView recyclerView;
+    private final long duration;
+    private final List<Transition> pending = new ArrayList<>();
+    private final Map<ItemViewHolder, Transition> running = new HashMap<>();
+    private boolean frameScheduled;
+    private final Runnable frameRunnable = new Runnable() {
+        @Override
+        public void run() {
+            startPending();
+        }
+    };
+
+    RowAnimator(RecyclerView recyclerView, long duration) {
+        this.recyclerView = recyclerView;
+        this.duration = duration;
+    }
+
+    Transition animate(ItemViewHolder holder) {
+        return new Transition(holder, null);
+    }
+
+    boolean isAnimating(ItemViewHolder holder) {
+        return running.containsKey(holder);
+    }
+
+    /**
+     * Stops the transition of the row where it is, neither its end action nor the rest of its chain will run.
+     */
+    void cancel(ItemViewHolder holder) {
+        final Transition transition = running.remove(holder);
+        if (transition != null) {
+            transition.cancel();
+        }
+    }
+
+    void cancelAll() {
+        for (Transition transition : new ArrayList<>(running.values())) {
+            transition.cancel();
+        }
+        running.clear();
+        pending.clear();
+    }
+
+    /**
+     * Jumps to the end of all transitions, including the rest of their chains, so their end actions run now.
+     */
+    void endAll() {
+        while (!running.isEmpty()) {
+            startPending();
+            for (Transition transition : new ArrayList<>(running.values())) {
+                transition.end();
+            }
+        }
+    }
+
+    private void enqueue(Transition transition) {
+        final Transition previous = running.put(transition.holder, transition);
+        if (previous != null && previous != transition) {
+            previous.cancel();
+        }
+        pending.add(transition);
+        if (!frameScheduled) {
+            frameScheduled = true;
+            ViewCompat.postOnAnimation(recyclerView, frameRunnable);
+        }
+    }
+
+    private void startPending() {
+        recyclerView.removeCallbacks(frameRunnable);
+        frameScheduled = false;
+        if (pending.isEmpty()) {
+            return;
+        }
+        final List<Transition> batch = new ArrayList<>(pending);
+        pending.clear();
+        for (Transition transition : batch) {
+            transition.run();
+        }
+    }
+
+    class Transition {
+
+        private final ItemViewHolder holder;
+        private final Transition first;
+        private final List<Animator> animators = new ArrayList<>(2);
+        private final List<View> layers = new ArrayList<>(1);
+        private int[] previousLayerTypes;
+        private Runnable endAction;
+        private Transition next;
+        private AnimatorSet set;
+        private boolean cancelled;
+
+        private Transition(ItemViewHolder holder, Transition first) {
+            this.holder = holder;
+            this.first = first != null ? first : this;
+        }
+
+        Transition translationX(View view, float value) {
+            animators.add(ObjectAnimator.ofFloat(view, View.TRANSLATION_X, value));
+            return this;
+        }
+
+        Transition alpha(View view, float value) {
+            animators.add(ObjectAnimator.ofFloat(view, View.ALPHA, value));
+            return this;
+        }
+
+        /**
+         * Draws the view from a hardware layer while the transition runs. Only use it for views whose content doesn't
+         * change meanwhile, e.g. not for the parent of another animated view.
+         */
+        Transition withLayer(View view) {
+            layers.add(view);
+            return this;
+        }
+
+        Transition withEndAction(Runnable endAction) {
+            this.endAction = endAction;
+            return this;
+        }
+
+        /**
+         * Returns the next transition of the row, it starts when this one ended.
+         */
+        Transition then() {
+            next = new Transition(holder, first);
+            return next;
+        }
+
+        /**
+         * Starts the first transition of the chain with the next animation frame.
+         */
+        void start() {
+            enqueue(first);
+        }
+
+        private void run() {
+            if (cancelled) {
+                return;
+            }
+            ViewCompat.setHasTransientState(holder.itemView, true);
+            previousLayerTypes = new int[layers.size()];
+            for (int i = 0; i < layers.size(); i++) {
+                final View view = layers.get(i);
+                previousLayerTypes[i] = view.getLayerType();
+                view.setLayerType(View.LAYER_TYPE_HARDWARE, null);
+                if (ViewCompat.isAttachedToWindow(view)) {
+                    view.buildLayer();
+                }
+            }
+            set = new AnimatorSet();
+            set.playTogether(animators);
+            set.setDuration(duration);
+            set.addListener(new AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(Animator animation) {
+                    finish();
+                }
+            });
+            set.start();
+        }
+
+        private void finish() {
+            release();
+            if (cancelled) {
+                return;
+            }
+            if (running.get(holder) == this) {
+                running.remove(holder);
+            }
+            if (endAction != null) {
+                endAction.run();
+            }
+            if (next != null) {
+                enqueue(next);
+            }
+        }
+
+        private void release() {
+            if (previousLayerTypes != null) {
+                for (int i = 0; i < layers.size(); i++) {
+                    layers.get(i).setLayerType(previousLayerTypes[i], null);
+                }
+                previousLayerTypes = null;
+                ViewCompat.setHasTransientState(holder.itemView, false);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            pending.remove(this);
+            if (set != null) {
+                // Ends up in finish(), which only releases the row.
+                set.cancel();
+            }
+        }
+
+        private void end() {
+            if (set != null) {
+                set.end();
+            }
+        }
+    }
+}
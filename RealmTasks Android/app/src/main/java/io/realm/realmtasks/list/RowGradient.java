@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+/**
+ * Lookup table for the gradient of a list, see {@link ItemViewHolder.ColorHelper}. The colors of the rows are computed
+ * once per list size instead of once per row and frame. Long lists only keep the colors of a slice of rows around the
+ * one asked for, so a change of their size doesn't compute thousands of colors which are never drawn.
+ */
+class RowGradient {
+
+    private static final int MAX_TABLE_SIZE = 256;
+
+    private final int[] colors;
+    private int[] table = new int[0];
+    private int tableStart;
+    private int tableListSize = -1;
+
+    RowGradient(int[] colors) {
+        this.colors = colors;
+    }
+
+    int getColor(int index, int size) {
+        if (index < 0 || index >= size) {
+            return ItemViewHolder.ColorHelper.getColor(colors, index, size);
+        }
+        if (size != tableListSize || index < tableStart || index >= tableStart + table.length) {
+            fill(index, size);
+        }
+        return table[index - tableStart];
+    }
+
+    private void fill(int index, int size) {
+        final int length = Math.min(size, MAX_TABLE_SIZE);
+        if (table.length != length) {
+            table = new int[length];
+        }
+        tableStart = Math.max(0, Math.min(index - length / 2, size - length));
+        tableListSize = size;
+        for (int i = 0; i < length; i++) {
+            table[i] = ItemViewHolder.ColorHelper.getColor(colors, tableStart + i, size);
+        }
+    }
+}
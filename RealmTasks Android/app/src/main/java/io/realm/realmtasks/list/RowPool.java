@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.view.AsyncLayoutInflater;
+import android.support.v7.view.ContextThemeWrapper;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.ArrayDeque;
+
+import io.realm.realmtasks.R;
+
+/**
+ * App wide supply of list rows. The list screens share one {@link RecyclerView.RecycledViewPool}, so the rows one
+ * screen recycled are reused by the next one, and {@link #prewarm()} inflates rows on a background thread during
+ * startup, so opening the first list doesn't inflate a screen full of rows on the main thread.
+ * <p>
+ * Rows are inflated with a themed application context, a pooled row must not keep an activity alive.
+ */
+public class RowPool {
+
+    private static final int VIEW_TYPE_ROW = 0;
+    private static final int MAX_RECYCLED_ROWS = 24;
+    private static final int PREWARM_COUNT = 12;
+
+    private static RowPool instance;
+
+    private final Context context;
+    private final RecyclerView.RecycledViewPool recycledViewPool = new RecyclerView.RecycledViewPool();
+    private final ArrayDeque<View> prewarmedRows = new ArrayDeque<>();
+    // Only there to give the rows inflated in the background the layout params of a row.
+    private final ViewGroup layoutParamsParent;
+    private boolean prewarmed;
+
+    private RowPool(Context context) {
+        this.context = new ContextThemeWrapper(context.getApplicationContext(), R.style.AppTheme);
+        recycledViewPool.setMaxRecycledViews(VIEW_TYPE_ROW, MAX_RECYCLED_ROWS);
+        layoutParamsParent = new FrameLayout(this.context);
+    }
+
+    public static synchronized RowPool getInstance(Context context) {
+        if (instance == null) {
+            instance = new RowPool(context);
+        }
+        return instance;
+    }
+
+    public RecyclerView.RecycledViewPool getRecycledViewPool() {
+        return recycledViewPool;
+    }
+
+    /**
+     * Inflates a screen's worth of rows in the background. Must be called on the main thread, only the first call
+     * does anything.
+     */
+    public void prewarm() {
+        if (prewarmed) {
+            return;
+        }
+        prewarmed = true;
+        final AsyncLayoutInflater inflater = new AsyncLayoutInflater(context);
+        final AsyncLayoutInflater.OnInflateFinishedListener listener =
+                new AsyncLayoutInflater.OnInflateFinishedListener() {
+                    @Override
+                    public void onInflateFinished(@NonNull View view, int resid, @Nullable ViewGroup parent) {
+                        prewarmedRows.push(view);
+                    }
+                };
+        for (int i = 0; i < PREWARM_COUNT; i++) {
+            inflater.inflate(R.layout.item_row, layoutParamsParent, listener);
+        }
+    }
+
+    /**
+     * Returns a row which hasn't been used yet, a prewarmed one if there is one left.
+     */
+    View obtainRow(ViewGroup parent) {
+        final View row = prewarmedRows.poll();
+        if (row != null) {
+            return row;
+        }
+        return LayoutInflater.from(context).inflate(R.layout.item_row, parent, false);
+    }
+
+    void attach(RecyclerView recyclerView) {
+        if (recyclerView.getRecycledViewPool() != recycledViewPool) {
+            recyclerView.setRecycledViewPool(recycledViewPool);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.realmtasks.R;
+import io.realm.realmtasks.data.TaskSearch;
+
+/**
+ * Shows the results of a {@link TaskSearch}. Pages are appended as they arrive.
+ */
+public class SearchResultAdapter extends RecyclerView.Adapter<SearchResultAdapter.ViewHolder> {
+
+    public interface OnResultClickListener {
+        void onResultClicked(TaskSearch.SearchResult result);
+    }
+
+    private final List<TaskSearch.SearchResult> results = new ArrayList<>();
+    private final OnResultClickListener listener;
+
+    public SearchResultAdapter(OnResultClickListener listener) {
+        this.listener = listener;
+    }
+
+    public void clear() {
+        final int count = results.size();
+        results.clear();
+        notifyItemRangeRemoved(0, count);
+    }
+
+    public void addAll(List<TaskSearch.SearchResult> page) {
+        final int start = results.size();
+        results.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        final View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_search_result, parent, false);
+        return new ViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        final TaskSearch.SearchResult result = results.get(position);
+        holder.text.setText(result.getText());
+        holder.text.setAlpha(result.isCompleted() ? 0.3f : 1f);
+        holder.taskListText.setText(result.getTaskListText());
+    }
+
+    @Override
+    public int getItemCount() {
+        return results.size();
+    }
+
+    class ViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
+        final TextView text;
+        final TextView taskListText;
+
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = itemView.findViewById(R.id.text);
+            taskListText = itemView.findViewById(R.id.task_list_text);
+            itemView.setOnClickListener(this);
+        }
+
+        @Override
+        public void onClick(View view) {
+            final int position = getAdapterPosition();
+            if (position != RecyclerView.NO_POSITION) {
+                listener.onResultClicked(results.get(position));
+            }
+        }
+    }
+}
@@ -17,24 +17,82 @@
 package io.realm.realmtasks.list;
 
 import android.content.Context;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.v7.widget.RecyclerView;
-import android.text.format.DateUtils;
-import android.view.View;
-import android.widget.LinearLayout;
 import android.widget.RelativeLayout;
-import android.widget.TextView;
 
 import java.util.Date;
+import java.util.Set;
+import java.util.UUID;
 
 import io.realm.OrderedRealmCollection;
 import io.realm.Realm;
+import io.realm.RealmQuery;
+import io.realm.RealmResults;
+import io.realm.realmtasks.data.RealmWriter;
+import io.realm.realmtasks.data.SortKey;
+import io.realm.realmtasks.data.TaskListCounters;
 import io.realm.realmtasks.model.Task;
+import io.realm.realmtasks.model.TaskList;
 
-public class TaskAdapter extends CommonAdapter<Task> implements TouchHelperAdapter {
+public class TaskAdapter extends CommonAdapter<Task> {
 
-    public TaskAdapter(Context context, OrderedRealmCollection<Task> items) {
-        super(context, items);
+    private final RowGradient gradient = new RowGradient(ItemViewHolder.ColorHelper.taskColors);
+    private final TaskList taskList;
+    private final String taskListId;
+    private String lastAddedId;
+    private String lastDismissedId;
+    private final DateLabelCache dateLabels;
+    private final Handler handler = new Handler();
+    private long dateRefreshTime = Long.MAX_VALUE;
+    private final Runnable dateRefreshRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dateRefreshTime = Long.MAX_VALUE;
+            refreshDateLabels();
+            scheduleDateRefresh();
+        }
+    };
+
+    /**
+     * The tasks are queried asynchronously, attach the adapter once {@link #getData()} is loaded. The list is looked up
+     * by its primary key right away.
+     */
+    public TaskAdapter(Context context, Realm realm, String taskListId) {
+        this(context, realm, taskListId,
+                realm.where(TaskList.class).equalTo(TaskList.FIELD_ID, taskListId).findFirst());
+    }
+
+    private TaskAdapter(Context context, Realm realm, String taskListId, TaskList taskList) {
+        super(context, queryTasks(realm, taskListId, taskList));
+        this.taskList = taskList != null
+                ? taskList
+                : realm.where(TaskList.class).equalTo(TaskList.FIELD_ID, taskListId).findFirstAsync();
+        this.taskListId = taskListId;
+        this.dateLabels = new DateLabelCache(context);
+    }
+
+    /**
+     * Queries the items of the list, which only looks at the tasks of this list. A list which hasn't been synced yet
+     * can only be found through the inverse links of all tasks.
+     */
+    private static RealmResults<Task> queryTasks(Realm realm, String taskListId, TaskList taskList) {
+        final RealmQuery<Task> query = taskList != null
+                ? taskList.getItems().where()
+                : realm.where(Task.class).equalTo(Task.FIELD_LISTS + "." + TaskList.FIELD_ID, taskListId);
+        return query.equalTo(Task.FIELD_DELETED, false).findAllSortedAsync(Task.FIELD_SORT_KEY);
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        handler.removeCallbacks(dateRefreshRunnable);
+        dateRefreshTime = Long.MAX_VALUE;
+    }
+
+    public TaskList getTaskList() {
+        return taskList;
     }
 
     @Override
@@ -43,135 +101,251 @@ public class TaskAdapter extends CommonAdapter<Task> implements TouchHelperAdapt
         final ItemViewHolder itemViewHolder = (ItemViewHolder) holder;
         final Task task = getItem(position);
         if (task.isValid()) {
-            final TextView text = itemViewHolder.getText();
-            text.setText(task.getText());
-
-            Date taskDate = task.getDate();
-            if(taskDate != null) {
-                CharSequence naturalDateString = naturalDateFrom(taskDate);
-                itemViewHolder.setMetadataText(naturalDateString);
-            } else {
-                itemViewHolder.setMetadataText(null);
-            }
-            narrowRightMargin(text);
-            narrowRightMargin(itemViewHolder.getEditText());
+            itemViewHolder.setText(task.getText());
+            bindDate(itemViewHolder, task);
             itemViewHolder.setCompleted(task.isCompleted());
         }
     }
 
+    @Override
+    protected void onBindPayloads(ItemViewHolder holder, Task task, Set<Payload> payloads) {
+        final boolean content = payloads.contains(Payload.CONTENT);
+        if (content || payloads.contains(Payload.TEXT)) {
+            holder.setText(task.getText());
+        }
+        if (content || payloads.contains(Payload.DATE)) {
+            bindDate(holder, task);
+        }
+        if (content || payloads.contains(Payload.COMPLETED)) {
+            holder.setCompleted(task.isCompleted());
+        }
+    }
+
+    private void bindDate(ItemViewHolder itemViewHolder, Task task) {
+        final Date taskDate = task.getDate();
+        if (taskDate != null) {
+            itemViewHolder.setMetadataText(naturalDateFrom(taskDate));
+            scheduleDateRefresh();
+        } else {
+            itemViewHolder.setMetadataText(null);
+        }
+    }
+
     private CharSequence naturalDateFrom(@NonNull Date taskDueDate) {
-        return DateUtils.getRelativeDateTimeString(
-                context,
-                taskDueDate.getTime(),
-                DateUtils.DAY_IN_MILLIS,
-                DateUtils.WEEK_IN_MILLIS, 0);
+        return dateLabels.get(taskDueDate.getTime());
     }
 
-    private void narrowRightMargin(View view) {
-        final LinearLayout.LayoutParams layoutParams = (LinearLayout.LayoutParams) view.getLayoutParams();
-        layoutParams.rightMargin = (int) (layoutParams.rightMargin * 0.2);
+    /**
+     * Wakes up when the first label shown expires, e.g. at midnight when "Tomorrow" becomes "Today".
+     */
+    private void scheduleDateRefresh() {
+        final long nextExpiry = dateLabels.getNextExpiry();
+        if (nextExpiry >= dateRefreshTime) {
+            return;
+        }
+        dateRefreshTime = nextExpiry;
+        handler.removeCallbacks(dateRefreshRunnable);
+        handler.postDelayed(dateRefreshRunnable, Math.max(0, nextExpiry - System.currentTimeMillis()));
+    }
+
+    /**
+     * Rebinds the dates of the rows whose label changed, the other rows keep theirs.
+     */
+    private void refreshDateLabels() {
+        final Set<Long> changed = dateLabels.refresh();
+        if (changed != null && changed.isEmpty()) {
+            return;
+        }
+        final OrderedRealmCollection<Task> tasks = getData();
+        if (tasks == null || !tasks.isValid()) {
+            return;
+        }
+        // Rows outside of the window get the new labels from the cache when they are bound.
+        final int end = Math.min(getWindowEnd(), tasks.size());
+        for (int i = getWindowStart(); i < end; i++) {
+            final Date date = tasks.get(i).getDate();
+            if (date != null && (changed == null || changed.contains(date.getTime()))) {
+                notifyDataItemChanged(i, Payload.DATE);
+            }
+        }
     }
 
     @Override
     public void onItemAdded() {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
+        // TaskList might have been deleted, in that case, don't create any new.
+        if (!taskList.isValid()) {
+            return;
+        }
+        final String id = UUID.randomUUID().toString();
+        lastAddedId = id;
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                // TaskList might have been deleted, in that case, don't create any new.
-                if (getData().isValid()) {
-                    final Task task = realm.createObject(Task.class);
-                    task.setText("");
-                    getData().add(0, task);
+                final TaskList taskList = findTaskList(realm);
+                if (taskList == null) {
+                    return;
                 }
+                final Task task = realm.createObject(Task.class);
+                task.setId(id);
+                task.setText("");
+                task.setSortKey(SortKey.top(taskList.getItems()));
+                taskList.getItems().add(0, task);
+                TaskListCounters.onTaskAdded(taskList, task);
             }
         });
-        realm.close();
     }
 
     @Override
     public void onItemMoved(final int fromPosition, final int toPosition) {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                moveItems(fromPosition, toPosition);
-            }
-        });
-        realm.close();
+        // Called once per drop, with data positions.
+        final String id = getData().get(fromPosition).getId();
+        final String sortKey = sortKeyForMove(fromPosition, toPosition);
+        if (id == null || sortKey == null) {
+            cancelDrop();
+            return;
+        }
+        writeDrop(Task.class, Task.FIELD_ID, id, sortKey);
     }
 
     @Override
     public void onItemCompleted(final int position) {
-        final Task task = getData().get(position);
-        final Realm realm = Realm.getDefaultInstance();
-        final int count = (int) getData().where().equalTo(Task.FIELD_COMPLETED, false).count();
-        realm.executeTransaction(new Realm.Transaction() {
+        final Task task = getItem(position);
+        final String id = task.getId();
+        if (id == null || !taskList.isValid()) {
+            return;
+        }
+        final boolean completed = !task.isCompleted();
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                if (!task.isCompleted()) {
-                    task.setCompleted(true);
-                    moveItems(position, count - 1);
-                } else {
-                    task.setCompleted(false);
-                    moveItems(position, count);
+                final Task task = findTask(realm, id);
+                final TaskList taskList = findTaskList(realm);
+                if (task == null || taskList == null || task.isCompleted() == completed) {
+                    return;
+                }
+                task.setCompleted(completed);
+                task.setCompletedAt(completed ? new Date() : null);
+                final String sortKey = sortKeyBetweenOpenAndCompleted(taskList, task);
+                if (sortKey != null) {
+                    task.setSortKey(sortKey);
                 }
+                TaskListCounters.onTaskCompletedChanged(taskList, task);
             }
         });
-        realm.close();
+    }
+
+    /**
+     * Returns a key which moves the task below the last open task and above the first completed one. The neighbours
+     * are looked up on the writer thread, in a long list they are usually far outside of the window.
+     */
+    private static String sortKeyBetweenOpenAndCompleted(TaskList taskList, Task task) {
+        final RealmResults<Task> open = otherItems(taskList, task, false).findAllSorted(Task.FIELD_SORT_KEY);
+        final RealmResults<Task> completed = otherItems(taskList, task, true).findAllSorted(Task.FIELD_SORT_KEY);
+        final String before = open.isEmpty() ? null : open.last().getSortKey();
+        final String after = completed.isEmpty() ? null : completed.first().getSortKey();
+        if (before != null && after != null && before.compareTo(after) >= 0) {
+            // Open and completed tasks are interleaved, e.g. by a sync merge, there is no boundary to move to.
+            return null;
+        }
+        return SortKey.between(before, after);
+    }
+
+    private static RealmQuery<Task> otherItems(TaskList taskList, Task task, boolean completed) {
+        return taskList.getItems().where()
+                .equalTo(Task.FIELD_DELETED, false)
+                .equalTo(Task.FIELD_COMPLETED, completed)
+                .notEqualTo(Task.FIELD_ID, task.getId());
     }
 
     @Override
     public void onItemDismissed(final int position) {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                final Task task = getData().get(position);
-                task.deleteFromRealm();
-            }
-        });
-        realm.close();
+        lastDismissedId = getItem(position).getId();
+        setDeleted(lastDismissedId, true);
+    }
+
+    @Override
+    protected String getItemKey(Task task) {
+        return task.getId();
+    }
+
+    @Override
+    protected boolean hasBadges() {
+        return false;
+    }
+
+    @Override
+    protected String getItemTitle(Task task) {
+        return task.getText();
+    }
+
+    @Override
+    protected boolean isLastAddedItem(Task task) {
+        return lastAddedId != null && lastAddedId.equals(task.getId());
     }
 
+    /**
+     * Undoes the last dismissal, as long as the task hasn't been purged yet.
+     */
     @Override
-    public void onItemReverted() {
-        if (getData().size() == 0) {
+    public void onItemRestored() {
+        setDeleted(lastDismissedId, false);
+        lastDismissedId = null;
+    }
+
+    private void setDeleted(final String id, final boolean deleted) {
+        if (id == null) {
             return;
         }
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                final Task task = getData().get(0);
-                task.deleteFromRealm();
+                final Task task = findTask(realm, id);
+                final TaskList taskList = findTaskList(realm);
+                if (task == null || taskList == null || task.isDeleted() == deleted) {
+                    return;
+                }
+                task.setDeleted(deleted);
+                task.setDeletedAt(deleted ? new Date() : null);
+                TaskListCounters.onTaskDeletedChanged(taskList, task);
             }
         });
-        realm.close();
     }
 
     @Override
     public int generatedRowColor(int row) {
-        return ItemViewHolder.ColorHelper.getColor(ItemViewHolder.ColorHelper.taskColors, row, getItemCount());
+        return gradient.getColor(row, getItemCount());
     }
 
     @Override
-    public void onItemChanged(final ItemViewHolder viewHolder) {
-        final Realm realm = Realm.getDefaultInstance();
-        final int position = viewHolder.getAdapterPosition();
-        if (position < 0) {
-            realm.close();
+    public void onItemChanged(final String id, final String text) {
+        if (id == null) {
             return;
         }
-        realm.executeTransaction(new Realm.Transaction() {
+        RealmWriter.getDefaultInstance().executeCoalesced(Task.FIELD_TEXT + id, new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                Task task = getData().get(position);
-                task.setText(viewHolder.getText().getText().toString());
+                final Task task = findTask(realm, id);
+                final TaskList taskList = findTaskList(realm);
+                // Skipping unchanged text also keeps the date, which the server would only extract again.
+                if (task == null || taskList == null || task.getText().equals(text)) {
+                    return;
+                }
+                final Date previousDate = task.getDate();
+                task.setText(text);
                 task.setDate(null); // remove date on text change, server will set
                                     // new value if there is a value to be set.
+                TaskListCounters.onTaskDateChanged(taskList, task, previousDate);
             }
         });
-        realm.close();
+    }
+
+    // Tasks created by other clients get their id from the SyncRepairer right after they arrive. Until then,
+    // changes to them are ignored.
+    private static Task findTask(Realm realm, String id) {
+        return realm.where(Task.class).equalTo(Task.FIELD_ID, id).findFirst();
+    }
+
+    private TaskList findTaskList(Realm realm) {
+        return realm.where(TaskList.class).equalTo(TaskList.FIELD_ID, taskListId).findFirst();
     }
 }
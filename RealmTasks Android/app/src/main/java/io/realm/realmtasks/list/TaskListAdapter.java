@@ -20,17 +20,57 @@ import android.content.Context;
 import android.support.v7.widget.RecyclerView;
 import android.widget.Toast;
 
+import java.util.Date;
+import java.util.Set;
 import java.util.UUID;
 
-import io.realm.OrderedRealmCollection;
 import io.realm.Realm;
 import io.realm.realmtasks.R;
+import io.realm.realmtasks.data.RealmWriter;
+import io.realm.realmtasks.data.SortKey;
 import io.realm.realmtasks.model.TaskList;
+import io.realm.realmtasks.model.TaskListList;
 
-public class TaskListAdapter extends CommonAdapter<TaskList> implements TouchHelperAdapter {
+public class TaskListAdapter extends CommonAdapter<TaskList> {
 
-    public TaskListAdapter(Context context, OrderedRealmCollection<TaskList> items) {
-        super(context, items);
+    private final RowGradient gradient = new RowGradient(ItemViewHolder.ColorHelper.listColors);
+    private String lastAddedId;
+    private String lastDismissedId;
+
+    /**
+     * The lists are queried asynchronously, attach the adapter once {@link #getData()} is loaded. Only the lists of
+     * the {@link TaskListList} are shown, lists which other clients removed from it stay hidden.
+     */
+    public TaskListAdapter(Context context, Realm realm) {
+        super(context, findTaskListList(realm).getItems().where()
+                .equalTo(TaskList.FIELD_DELETED, false)
+                .findAllSortedAsync(TaskList.FIELD_SORT_KEY));
+    }
+
+    private static TaskListList findTaskListList(Realm realm) {
+        final TaskListList taskListList = realm.where(TaskListList.class).findFirst();
+        if (taskListList == null) {
+            throw new IllegalStateException("The TaskListList is created when the user signs in.");
+        }
+        return taskListList;
+    }
+
+    @Override
+    protected void onBindPayloads(ItemViewHolder holder, TaskList taskList, Set<Payload> payloads) {
+        final boolean content = payloads.contains(Payload.CONTENT);
+        if (content || payloads.contains(Payload.TEXT)) {
+            holder.setText(taskList.getText());
+        }
+        // The badge reads the counters of the list, which every task change updates in the same transaction (and
+        // the SyncRepairer after sync merges). The change of the list itself rebinds only its own row.
+        if (content || payloads.contains(Payload.COMPLETED)) {
+            bindBadge(holder, taskList);
+        }
+    }
+
+    private static void bindBadge(ItemViewHolder itemViewHolder, TaskList taskList) {
+        itemViewHolder.setBadgeCount((int) taskList.getIncompleteCount());
+        itemViewHolder.setCompleted(taskList.isCompleted());
     }
 
     @Override
@@ -38,115 +78,146 @@ public class TaskListAdapter extends CommonAdapter<TaskList> implements TouchHel
         super.onBindViewHolder(holder, position);
         final ItemViewHolder itemViewHolder = (ItemViewHolder) holder;
         final TaskList taskList = getItem(position);
-        itemViewHolder.getText().setText(taskList.getText());
+        itemViewHolder.setText(taskList.getText());
         itemViewHolder.setBadgeVisible(true);
-        final long badgeCount = taskList.getItems().where().equalTo(TaskList.FIELD_COMPLETED, false).count();
-        itemViewHolder.setBadgeCount((int) badgeCount);
-        itemViewHolder.setCompleted(taskList.isCompleted());
+        bindBadge(itemViewHolder, taskList);
     }
 
     @Override
     public void onItemAdded() {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
+        final String id = UUID.randomUUID().toString();
+        lastAddedId = id;
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
+                final TaskListList taskListList = realm.where(TaskListList.class).findFirst();
+                if (taskListList == null) {
+                    return;
+                }
                 final TaskList taskList = new TaskList();
-                taskList.setId(UUID.randomUUID().toString());
+                taskList.setId(id);
                 taskList.setText("");
-                getData().add(0, taskList);
+                taskList.setSortKey(SortKey.top(taskListList.getItems()));
+                taskListList.getItems().add(0, taskList);
             }
         });
-        realm.close();
     }
 
     @Override
     public void onItemMoved(final int fromPosition, final int toPosition) {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                moveItems(fromPosition, toPosition);
-            }
-        });
-        realm.close();
+        // Called once per drop, with data positions.
+        final String id = getData().get(fromPosition).getId();
+        final String sortKey = sortKeyForMove(fromPosition, toPosition);
+        if (id == null || sortKey == null) {
+            cancelDrop();
+            return;
+        }
+        writeDrop(TaskList.class, TaskList.FIELD_ID, id, sortKey);
     }
 
     @Override
     public void onItemCompleted(final int position) {
         final TaskList taskList = getItem(position);
-        final Realm realm = Realm.getDefaultInstance();
+        final boolean completed = !taskList.isCompleted();
+        if (completed && !taskList.isCompletable()) {
+            Toast.makeText(context, R.string.no_item, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        final String id = taskList.getId();
         final int count = (int) getData().where().equalTo(TaskList.FIELD_COMPLETED, false).count();
-        realm.executeTransaction(new Realm.Transaction() {
+        final String sortKey = sortKeyForMove(position, completed ? count - 1 : count);
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                if (!taskList.isCompleted()) {
-                    if (taskList.isCompletable()) {
-                        taskList.setCompleted(true);
-                        moveItems(position, count - 1);
-                    } else {
-                        Toast.makeText(context, R.string.no_item, Toast.LENGTH_SHORT).show();
-                    }
-                } else {
-                    taskList.setCompleted(false);
-                    moveItems(position, count);
+                final TaskList taskList = findTaskList(realm, id);
+                if (taskList == null || taskList.isCompleted() == completed) {
+                    return;
+                }
+                taskList.setCompleted(completed);
+                if (sortKey != null) {
+                    taskList.setSortKey(sortKey);
                 }
             }
         });
-        realm.close();
     }
 
     @Override
     public void onItemDismissed(final int position) {
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
-            @Override
-            public void execute(Realm realm) {
-                final TaskList taskList = getData().get(position);
-                taskList.getItems().deleteAllFromRealm();
-                taskList.deleteFromRealm();
-            }
-        });
-        realm.close();
+        lastDismissedId = getItem(position).getId();
+        setDeleted(lastDismissedId, true);
+    }
+
+    @Override
+    protected String getItemKey(TaskList taskList) {
+        return taskList.getId();
+    }
+
+    @Override
+    protected boolean hasBadges() {
+        return true;
+    }
+
+    @Override
+    protected String getItemTitle(TaskList taskList) {
+        return taskList.getText();
+    }
+
+    @Override
+    protected boolean isLastAddedItem(TaskList taskList) {
+        return lastAddedId != null && lastAddedId.equals(taskList.getId());
     }
 
+    /**
+     * Undoes the last dismissal, as long as the list hasn't been purged yet.
+     */
     @Override
-    public void onItemReverted() {
-        if (getData().size() == 0) {
+    public void onItemRestored() {
+        setDeleted(lastDismissedId, false);
+        lastDismissedId = null;
+    }
+
+    /**
+     * Only marks the list, its tasks are deleted in batches by the TombstonePurger.
+     */
+    private void setDeleted(final String id, final boolean deleted) {
+        if (id == null) {
             return;
         }
-        final Realm realm = Realm.getDefaultInstance();
-        realm.executeTransaction(new Realm.Transaction() {
+        RealmWriter.getDefaultInstance().execute(new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                final TaskList taskList = getData().get(0);
-                taskList.getItems().deleteAllFromRealm();
-                taskList.deleteFromRealm();
+                final TaskList taskList = findTaskList(realm, id);
+                if (taskList == null || taskList.isDeleted() == deleted) {
+                    return;
+                }
+                taskList.setDeleted(deleted);
+                taskList.setDeletedAt(deleted ? new Date() : null);
             }
         });
-        realm.close();
     }
 
     @Override
     public int generatedRowColor(int row) {
-        return ItemViewHolder.ColorHelper.getColor(ItemViewHolder.ColorHelper.listColors, row, getItemCount());
+        return gradient.getColor(row, getItemCount());
     }
 
     @Override
-    public void onItemChanged(final ItemViewHolder viewHolder) {
-        final Realm realm = Realm.getDefaultInstance();
-        final int position = viewHolder.getAdapterPosition();
-        if (position < 0) {
-            realm.close();
+    public void onItemChanged(final String id, final String text) {
+        if (id == null) {
             return;
         }
-        realm.executeTransaction(new Realm.Transaction() {
+        RealmWriter.getDefaultInstance().executeCoalesced(TaskList.FIELD_TEXT + id, new Realm.Transaction() {
             @Override
             public void execute(Realm realm) {
-                TaskList taskList = getItem(position);
-                taskList.setText(viewHolder.getText().getText().toString());
+                final TaskList taskList = findTaskList(realm, id);
+                if (taskList != null && !taskList.getText().equals(text)) {
+                    taskList.setText(text);
+                }
             }
         });
-        realm.close();
+    }
+
+    private static TaskList findTaskList(Realm realm, String id) {
+        return realm.where(TaskList.class).equalTo(TaskList.FIELD_ID, id).findFirst();
     }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.list;
+
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.realm.realmtasks.view.TextLayoutCache;
+
+/**
+ * Lays out the titles of the rows which are about to scroll into view on the background thread of the
+ * {@link TextLayoutCache}, so binding them finds their layouts ready. Layouts are cached by text, so the change
+ * notifications of the adapter only need the changed and inserted items near the screen to be laid out again.
+ */
+class TitlePrefetcher extends RecyclerView.OnScrollListener {
+
+    private static final int PREFETCH_COUNT = 8;
+
+    private final CommonAdapter adapter;
+    private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            prefetchNearby(positionStart, positionStart + itemCount - 1);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            prefetchNearby(positionStart, positionStart + itemCount - 1);
+        }
+    };
+    private RecyclerView recyclerView;
+    private int lastEdge = RecyclerView.NO_POSITION;
+
+    TitlePrefetcher(CommonAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    void attachToRecyclerView(RecyclerView recyclerView) {
+        if (this.recyclerView != null) {
+            this.recyclerView.removeOnScrollListener(this);
+            adapter.unregisterAdapterDataObserver(dataObserver);
+        }
+        this.recyclerView = recyclerView;
+        lastEdge = RecyclerView.NO_POSITION;
+        if (recyclerView != null) {
+            recyclerView.addOnScrollListener(this);
+            adapter.registerAdapterDataObserver(dataObserver);
+        }
+    }
+
+    @Override
+    public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) {
+            return;
+        }
+        final LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        // Only once per row that scrolls in, not for every pixel.
+        final int edge = dy > 0
+                ? layoutManager.findLastVisibleItemPosition()
+                : layoutManager.findFirstVisibleItemPosition();
+        if (edge == RecyclerView.NO_POSITION || edge == lastEdge) {
+            return;
+        }
+        lastEdge = edge;
+        if (dy > 0) {
+            prefetch(edge + 1, edge + PREFETCH_COUNT);
+        } else {
+            prefetch(edge - PREFETCH_COUNT, edge - 1);
+        }
+    }
+
+    private void prefetchNearby(int from, int to) {
+        if (recyclerView == null || !(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        final LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+        final int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        final int last = layoutManager.findLastVisibleItemPosition();
+        prefetch(Math.max(from, first - PREFETCH_COUNT), Math.min(to, last + PREFETCH_COUNT));
+    }
+
+    private void prefetch(int from, int to) {
+        from = Math.max(from, 0);
+        to = Math.min(to, adapter.getItemCount() - 1);
+        if (from > to || recyclerView.getChildCount() == 0) {
+            return;
+        }
+        final List<String> titles = new ArrayList<>(to - from + 1);
+        for (int position = from; position <= to; position++) {
+            final String title = adapter.getTitle(position);
+            if (title != null) {
+                titles.add(title);
+            }
+        }
+        // Any row lays the titles out like the rows they are going to be bound to.
+        final ItemViewHolder sample = (ItemViewHolder) recyclerView.getChildViewHolder(recyclerView.getChildAt(0));
+        sample.getRow().prefetch(titles);
+    }
+}
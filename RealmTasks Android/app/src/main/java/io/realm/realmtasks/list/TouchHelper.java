@@ -21,6 +21,7 @@ import android.graphics.Canvas;
 import android.os.Handler;
 import android.os.Looper;
 import android.support.annotation.IntDef;
+import android.support.annotation.StringRes;
 import android.support.v4.view.GestureDetectorCompat;
 import android.support.v4.view.MotionEventCompat;
 import android.support.v4.view.ViewCompat;
@@ -28,16 +29,17 @@ import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.support.v7.widget.RecyclerView.OnItemTouchListener;
 import android.support.v7.widget.RecyclerView.ViewHolder;
-import android.text.SpannableStringBuilder;
+import android.support.v7.widget.SimpleItemAnimator;
+import android.support.v7.widget.helper.ItemTouchHelper;
 import android.util.DisplayMetrics;
 import android.view.GestureDetector.SimpleOnGestureListener;
+import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewConfiguration;
+import android.view.ViewGroup;
 import android.view.ViewParent;
 import android.view.WindowManager;
-import android.view.animation.Animation;
-import android.view.animation.TranslateAnimation;
 
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -54,6 +56,8 @@ public class TouchHelper {
     private static final int POINTER_ID_NONE = -1;
     private static final int ADD_THRESHOLD = 46;
     private static final int ICON_WIDTH = 66;
+    // How long the pull header waits for the added item to show up before giving up on editing it.
+    private static final int ADD_TIMEOUT = 1000;
 
     private final Callback callback;
     private final CommonAdapter adapter;
@@ -68,13 +72,20 @@ public class TouchHelper {
     private float selectedInitialY;
     private float logicalDensity;
     private ItemViewHolder selected;
-    private ItemViewHolder currentEditing;
     private RecyclerView recyclerView;
     private TasksOnItemTouchListener onItemTouchListener;
     private TasksItemDecoration itemDecoration;
-    private boolean isAddingCanceled;
-
-    @IntDef({ACTION_STATE_IDLE, ACTION_STATE_SWIPE, ACTION_STATE_PULL})
+    private GradientDecoration gradientDecoration;
+    private RowAnimator rowAnimator;
+    private InlineEditor inlineEditor;
+    private TitlePrefetcher titlePrefetcher;
+    private ItemViewHolder pullHeader;
+    @StringRes
+    private int pullText;
+    private boolean addPending;
+    private RecyclerView.ItemAnimator pausedItemAnimator;
+
+    @IntDef({ACTION_STATE_IDLE, ACTION_STATE_SWIPE, ACTION_STATE_PULL, ACTION_STATE_DRAG})
     @Retention(RetentionPolicy.SOURCE)
     private @interface ActionState {
     }
@@ -82,6 +93,7 @@ public class TouchHelper {
     private static final int ACTION_STATE_IDLE = 0;
     private static final int ACTION_STATE_SWIPE = 1;
     private static final int ACTION_STATE_PULL = 2;
+    private static final int ACTION_STATE_DRAG = 3;
     @ActionState
     private int actionState = ACTION_STATE_IDLE;
 
@@ -97,6 +109,20 @@ public class TouchHelper {
 
     private Handler handler;
 
+    private final Runnable addTimeoutRunnable = new Runnable() {
+        @Override
+        public void run() {
+            finishAdd();
+        }
+    };
+
+    private final InlineEditor.OnEditCommitListener editCommitListener = new InlineEditor.OnEditCommitListener() {
+        @Override
+        public void onEditCommitted(String id, String text) {
+            callback.onChanged(id, text);
+        }
+    };
+
     private TouchHelper() {
         this(null, null);
     }
@@ -120,10 +146,36 @@ public class TouchHelper {
         }
         onItemTouchListener = new TasksOnItemTouchListener(recyclerView.getContext());
         itemDecoration = new TasksItemDecoration();
-        recyclerView.setLayoutManager(new LinearLayoutManager(recyclerView.getContext()));
+        gradientDecoration = new GradientDecoration(adapter);
+        rowAnimator = new RowAnimator(recyclerView, ANIMATION_DURATION);
+        // Keeps the layout manager of the screen, with its prefetch settings and scroll position, across attaches.
+        if (!(recyclerView.getLayoutManager() instanceof LinearLayoutManager)) {
+            recyclerView.setLayoutManager(new LinearLayoutManager(recyclerView.getContext()));
+        }
+        RowPool.getInstance(recyclerView.getContext()).attach(recyclerView);
+        // Rebind changed rows in place, a row which is being edited must stay the same view. The animator is null
+        // while the restore of an add, which was pending on detach, has not run yet; it was configured before.
+        final RecyclerView.ItemAnimator itemAnimator = recyclerView.getItemAnimator();
+        if (itemAnimator instanceof SimpleItemAnimator) {
+            ((SimpleItemAnimator) itemAnimator).setSupportsChangeAnimations(false);
+        }
         recyclerView.addOnItemTouchListener(onItemTouchListener);
+        recyclerView.addItemDecoration(gradientDecoration);
         recyclerView.addItemDecoration(itemDecoration);
+        recyclerView.setChildDrawingOrderCallback(new DragDrawingOrderCallback());
+        recyclerView.setRecyclerListener(new RecyclerView.RecyclerListener() {
+            @Override
+            public void onViewRecycled(ViewHolder holder) {
+                // The row is going to show another item, its transition must not write to the old one.
+                rowAnimator.cancel((ItemViewHolder) holder);
+                if (inlineEditor.getHolder() == holder) {
+                    inlineEditor.end();
+                }
+            }
+        });
         recyclerView.setAdapter(adapter);
+        titlePrefetcher = new TitlePrefetcher(adapter);
+        titlePrefetcher.attachToRecyclerView(recyclerView);
         final Context context = this.recyclerView.getContext();
         final ViewConfiguration viewConfiguration = ViewConfiguration.get(context);
         scaledTouchSlop = viewConfiguration.getScaledTouchSlop();
@@ -132,28 +184,58 @@ public class TouchHelper {
         systemService.getDefaultDisplay().getMetrics(metrics);
         logicalDensity = metrics.density;
         adapter.setOnFirstItemUpdateListener(new OnFirstItemUpdateListener());
+        adapter.setOnDragCanceledListener(new OnDragCanceledListener());
+        // Shown in place of the new row while pulling, the row itself is only added once the pull is released.
+        final ViewGroup parent = (ViewGroup) recyclerView.getParent();
+        final View headerView = LayoutInflater.from(context).inflate(R.layout.item_row, parent, false);
+        headerView.setVisibility(View.INVISIBLE);
+        parent.addView(headerView, parent.indexOfChild(recyclerView) + 1);
+        pullHeader = new ItemViewHolder(headerView, adapter);
+        inlineEditor = new InlineEditor(recyclerView, adapter, editCommitListener);
     }
 
     private void destroyCallbacks() {
+        // Rows which are still being dismissed or completed are written right away.
+        rowAnimator.endAll();
+        rowAnimator = null;
+        recyclerView.setRecyclerListener(null);
+        titlePrefetcher.attachToRecyclerView(null);
+        titlePrefetcher = null;
+        finishAdd();
+        // Commits the text if it changed since the last commit.
+        inlineEditor.destroy();
+        inlineEditor = null;
+        ((ViewGroup) pullHeader.itemView.getParent()).removeView(pullHeader.itemView);
+        pullHeader = null;
         adapter.setOnFirstItemUpdateListener(null);
+        adapter.setOnDragCanceledListener(null);
+        recyclerView.setChildDrawingOrderCallback(null);
+        // Recycles the rows into the shared pool.
         recyclerView.setAdapter(null);
-        recyclerView.setLayoutManager(null);
         recyclerView.removeItemDecoration(itemDecoration);
+        recyclerView.removeItemDecoration(gradientDecoration);
         recyclerView.removeOnItemTouchListener(onItemTouchListener);
         onItemTouchListener = null;
         itemDecoration = null;
+        gradientDecoration = null;
     }
 
     public interface Callback {
 
+        /**
+         * Called for every step of a drag, the move must only be applied to the view. See {@link #onDropped}.
+         */
         void onMoved(RecyclerView recyclerView, ItemViewHolder from, ItemViewHolder to);
+        void onDropped(ItemViewHolder viewHolder);
         void onCompleted(ItemViewHolder viewHolder);
         void onDismissed(ItemViewHolder viewHolder);
         boolean canDismissed();
         boolean onClicked(ItemViewHolder viewHolder);
-        void onChanged(ItemViewHolder viewHolder);
+        /**
+         * Called with the id of the edited item, the row might have been recycled already.
+         */
+        void onChanged(String id, String text);
         void onAdded();
-        void onReverted(boolean shouldUpdateUI);
         void onExit();
     }
 
@@ -164,7 +246,6 @@ public class TouchHelper {
             if (selected != null) {
                 final ItemViewHolder selectedViewHolder = selected;
                 final View selectedItemView = selectedViewHolder.itemView;
-                final int height = selectedItemView.getHeight();
                 if (actionState == ACTION_STATE_SWIPE) {
                     final float translationX = selectedInitialX + dx - selectedItemView.getLeft();
                     final float absDx = Math.abs(translationX);
@@ -188,42 +269,10 @@ public class TouchHelper {
                             ViewCompat.setTranslationX(selectedItemView, translationX + maxNiche);
                         }
                     }
-                } else if (actionState == ACTION_STATE_PULL) {
-                    boolean hintPanelVisible = false;
-                    if (dy >= 0 && dy < height) {
-                        selectedViewHolder.getText().setText(R.string.pull_to_create_item);
-                        double ratio = dy / height;
-                        float rotationX = (float) (90 - Math.toDegrees(Math.asin(ratio)));
-                        selectedItemView.setRotationX(rotationX);
-                        selectedItemView.setPivotY(height);
-                    } else {
-                        selectedViewHolder.getText().setText(R.string.release_to_create_item);
-                        selectedItemView.setTranslationY(0);
-                        selectedItemView.setRotationX(0f);
-                        if (callback.canDismissed()) {
-                            final int actionBaseline = height * 2;
-                            if (dy > actionBaseline) {
-                                hintPanelVisible = true;
-                            }
-                            if (pullState == PULL_STATE_ADD && dy > actionBaseline) {
-                                pullState = PULL_STATE_CANCEL_ADD;
-                            } else if (pullState == PULL_STATE_CANCEL_ADD && dy < actionBaseline) {
-                                pullState = PULL_STATE_ADD;
-                            }
-                        }
-                    }
-                    selected.setHintPanelVisible(hintPanelVisible);
-                    int paddingTop = (int) dy - height;
-                    if (paddingTop < 0 - height) {
-                        paddingTop = 0 - height;
-                    }
-                    ViewCompat.setPaddingRelative(recyclerView, 0, paddingTop, 0, 0);
-                    recyclerView.scrollToPosition(0);
+                } else if (actionState == ACTION_STATE_DRAG) {
+                    ViewCompat.setTranslationY(selectedItemView, selectedInitialY + dy - selectedItemView.getTop());
                 }
             }
-            if (actionState == ACTION_STATE_PULL && selected == null) {
-                recyclerView.scrollBy(0, (int) dy * -1);
-            }
         }
     }
 
@@ -244,7 +293,6 @@ public class TouchHelper {
                 final int pointerIndex = motionEvent.findPointerIndex(pointerId);
                 initialX = motionEvent.getX(pointerIndex);
                 initialY = motionEvent.getY(pointerIndex);
-                isAddingCanceled = false;
             } else if (action == MotionEvent.ACTION_CANCEL || action == MotionEvent.ACTION_UP) {
                 pointerId = POINTER_ID_NONE;
                 selectView(null, ACTION_STATE_IDLE);
@@ -283,6 +331,11 @@ public class TouchHelper {
                 if (actionState == ACTION_STATE_PULL || viewHolder != null) {
                     dx = motionEvent.getX(pointerIndex) - initialX;
                     dy = motionEvent.getY(pointerIndex) - initialY;
+                    if (actionState == ACTION_STATE_DRAG) {
+                        moveIfNecessary();
+                    } else if (actionState == ACTION_STATE_PULL) {
+                        updatePull();
+                    }
                     TouchHelper.this.recyclerView.invalidate();
                 }
             }
@@ -312,6 +365,30 @@ public class TouchHelper {
             return recyclerView.findChildViewUnder(x, y);
         }
 
+        private void moveIfNecessary() {
+            if (selected == null || recyclerView.isLayoutRequested()) {
+                return;
+            }
+            final View selectedItemView = selected.itemView;
+            final float centerY = selectedInitialY + dy + selectedItemView.getHeight() / 2;
+            for (int i = 0; i < recyclerView.getChildCount(); i++) {
+                final View child = recyclerView.getChildAt(i);
+                if (child == selectedItemView || centerY < child.getTop() || centerY >= child.getBottom()) {
+                    continue;
+                }
+                final ItemViewHolder target = (ItemViewHolder) recyclerView.getChildViewHolder(child);
+                if (target.getAdapterPosition() == RecyclerView.NO_POSITION
+                        || selected.getAdapterPosition() == RecyclerView.NO_POSITION) {
+                    return;
+                }
+                callback.onMoved(recyclerView, selected, target);
+                // Keeps the list from jumping when the first visible row is moved.
+                ((ItemTouchHelper.ViewDropHandler) recyclerView.getLayoutManager()).prepareForDrop(
+                        selectedItemView, child, selectedItemView.getLeft(), (int) (selectedInitialY + dy));
+                return;
+            }
+        }
+
         private boolean preparePull(MotionEvent motionEvent) {
             if (actionState != ACTION_STATE_IDLE) {
                 return false;
@@ -323,10 +400,10 @@ public class TouchHelper {
                 final int action = MotionEventCompat.getActionMasked(motionEvent);
                 if (action == MotionEvent.ACTION_MOVE) {
                     dy = motionEvent.getY(pointerIndex) - initialY;
-                    if (dy > 10) {
+                    if (dy > 10 && !addPending) {
                         initialY = motionEvent.getY(pointerIndex);
-                        callback.onAdded();
-                        pullState = PULL_STATE_ADD;
+                        dy = 0;
+                        startPull();
                         selectView(null, ACTION_STATE_PULL);
                         return true;
                     }
@@ -360,7 +437,7 @@ public class TouchHelper {
             if (childViewHolder == null) {
                 return;
             }
-            if (currentEditing == childViewHolder) {
+            if (inlineEditor.getHolder() == childViewHolder || rowAnimator.isAnimating((ItemViewHolder) childViewHolder)) {
                 return;
             }
             TouchHelper.this.dx = TouchHelper.this.dy = 0;
@@ -381,76 +458,79 @@ public class TouchHelper {
                     final float previousTranslationX = itemViewTranslationX + rowTranslationX;
                     if (Math.abs(previousTranslationX) > maxNiche) {
                         if (previousTranslationX < 0) {
-                            animateDismissItem(selectedItemView);
+                            animateDismissItem(TouchHelper.this.selected);
                         } else {
-                            animateCompleteItem(selectedItemView);
+                            animateCompleteItem(TouchHelper.this.selected);
                         }
                     } else {
-                        final CharSequence text = TouchHelper.this.selected.getText().getText();
-                        final SpannableStringBuilder stringBuilder = new SpannableStringBuilder(text, 0, text.length());
-                        stringBuilder.clearSpans();
-                        TouchHelper.this.selected.getText().setText(stringBuilder);
                         boolean completed = TouchHelper.this.selected.getCompleted();
                         TouchHelper.this.selected.reset();
                         TouchHelper.this.selected.setCompleted(completed);
                     }
                 }
-            } else if (previousActionState == ACTION_STATE_PULL) {
-                ViewCompat.setPaddingRelative(recyclerView, 0, 0, 0, 0);
+            } else if (previousActionState == ACTION_STATE_DRAG) {
                 if (TouchHelper.this.selected != null) {
-                    TouchHelper.this.selected.itemView.setRotationX(0);
-                    TouchHelper.this.selected.itemView.setTranslationY(0);
-                    if (pullState == PULL_STATE_CANCEL_ADD) {
-                        TouchHelper.this.selected.itemView.setAlpha(0);
-                        if (!isAddingCanceled) {
-                            callback.onReverted(false);
-                            isAddingCanceled = true;
-                        }
-                        recyclerView.setVisibility(View.INVISIBLE);
-                        handler.post(new Runnable() {
-                            @Override
-                            public void run() {
-                                callback.onExit();
-                            }
-                        });
-                    } else if (dy < logicalDensity * ADD_THRESHOLD) {
-                        callback.onReverted(false);
-                    } else {
-                        TouchHelper.this.selected.itemView.setAlpha(1f);
-                        TouchHelper.this.selected.getText().setText("");
-                        currentEditing = TouchHelper.this.selected;
-                        TouchHelper.this.selected.setEditable(true);
-                    }
-                    TouchHelper.this.selected = null;
+                    ViewCompat.setTranslationY(TouchHelper.this.selected.itemView, 0);
+                    TouchHelper.this.selected.setBackgroundPinned(false);
+                    callback.onDropped(TouchHelper.this.selected);
                 }
+            } else if (previousActionState == ACTION_STATE_PULL) {
+                endPull();
             }
             TouchHelper.this.selected = selected;
             TouchHelper.this.actionState = actionState;
+            if (selected != null && actionState == ACTION_STATE_DRAG) {
+                // The dragged row is drawn above the others, the gradient below all rows would be covered.
+                selected.setBackgroundPinned(true);
+            }
             if (selected != null) {
                 selectedInitialX = selected.itemView.getLeft();
                 selectedInitialY = selected.itemView.getTop();
             }
             final ViewParent viewParent = recyclerView.getParent();
-            viewParent.requestDisallowInterceptTouchEvent(TouchHelper.this.selected != null);
+            viewParent.requestDisallowInterceptTouchEvent(
+                    TouchHelper.this.selected != null || actionState == ACTION_STATE_PULL);
             recyclerView.invalidate();
         }
 
-        private void animateDismissItem(View selectedItemView) {
-            final TranslateAnimation translateAnimation =
-                    new TranslateAnimation(0, 0 - selectedItemView.getWidth(), 0, 0);
-            translateAnimation.setDuration(ANIMATION_DURATION);
-            translateAnimation.setAnimationListener(new DismissAnimationListener(TouchHelper.this.selected));
-            ViewCompat.setHasTransientState(selectedItemView, true);
-            selectedItemView.startAnimation(translateAnimation);
+        /**
+         * Slides the row out, the item is only deleted once the row is gone.
+         */
+        private void animateDismissItem(final ItemViewHolder viewHolder) {
+            final View itemView = viewHolder.itemView;
+            rowAnimator.animate(viewHolder)
+                    .translationX(itemView, -itemView.getWidth())
+                    .withLayer(itemView)
+                    .withEndAction(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (viewHolder.getAdapterPosition() != RecyclerView.NO_POSITION) {
+                                callback.onDismissed(viewHolder);
+                            }
+                        }
+                    })
+                    .start();
         }
 
-        private void animateCompleteItem(View selectedItemView) {
-            final TranslateAnimation translateAnimation =
-                    new TranslateAnimation(0, 0, 0, 0);
-            translateAnimation.setDuration(ANIMATION_DURATION);
-            translateAnimation.setAnimationListener(new CompleteAnimationListener(TouchHelper.this.selected));
-            ViewCompat.setHasTransientState(selectedItemView, true);
-            selectedItemView.startAnimation(translateAnimation);
+        /**
+         * Settles the row back in place, the item is only completed afterwards. The change rebinds the row in place or
+         * moves it, so it has to be back in place by then.
+         */
+        private void animateCompleteItem(final ItemViewHolder viewHolder) {
+            final View row = viewHolder.getRow();
+            rowAnimator.animate(viewHolder)
+                    .translationX(viewHolder.itemView, 0)
+                    .translationX(row, 0)
+                    .withLayer(row)
+                    .withEndAction(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (viewHolder.getAdapterPosition() != RecyclerView.NO_POSITION) {
+                                callback.onCompleted(viewHolder);
+                            }
+                        }
+                    })
+                    .start();
         }
 
         private class TasksSimpleOnGestureListener extends SimpleOnGestureListener {
@@ -460,93 +540,209 @@ public class TouchHelper {
                 return true;
             }
 
+            @Override
+            public void onLongPress(MotionEvent motionEvent) {
+                if (actionState != ACTION_STATE_IDLE || selected != null || inlineEditor.getHolder() != null) {
+                    return;
+                }
+                final View childView = recyclerView.findChildViewUnder(motionEvent.getX(), motionEvent.getY());
+                if (childView == null) {
+                    return;
+                }
+                final ItemViewHolder viewHolder = (ItemViewHolder) recyclerView.getChildViewHolder(childView);
+                final int position = viewHolder.getAdapterPosition();
+                if (position == RecyclerView.NO_POSITION || rowAnimator.isAnimating(viewHolder)) {
+                    return;
+                }
+                adapter.startDrag(position);
+                dx = dy = 0;
+                selectView(viewHolder, ACTION_STATE_DRAG);
+            }
+
             @Override
             public boolean onSingleTapConfirmed(MotionEvent motionEvent) {
                 final int pointerId = motionEvent.getPointerId(0);
                 final int pointerIndex = motionEvent.findPointerIndex(pointerId);
                 final View childView = findChildView(motionEvent, pointerIndex);
                 if (childView == null) {
-                    if (currentEditing != null) {
-                        doEndOfEditing();
-                    }
+                    inlineEditor.end();
                     return false;
                 }
                 final ItemViewHolder viewHolder = (ItemViewHolder) recyclerView.getChildViewHolder(childView);
                 if (viewHolder == null) {
-                    doEndOfEditing();
+                    inlineEditor.end();
                     return false;
                 }
-                if (currentEditing == viewHolder) {
+                final ItemViewHolder editing = inlineEditor.getHolder();
+                if (editing == viewHolder) {
                     if (motionEvent.getX() < viewHolder.itemView.getWidth() / 2) {
                         return false;
                     } else {
-                        doEndOfEditing();
+                        inlineEditor.end();
                         return false;
                     }
                 }
-                if (currentEditing != null) {
-                    doEndOfEditing();
+                if (editing != null) {
+                    inlineEditor.end();
                     return false;
                 }
-                if (motionEvent.getX() > viewHolder.itemView.getWidth() - viewHolder.getBadge().getWidth()) {
+                if (motionEvent.getX() > viewHolder.itemView.getWidth() - viewHolder.getRow().getBadgeWidth()) {
                     if (callback.onClicked(viewHolder)) {
                         return true;
                     }
                 }
-                currentEditing = viewHolder;
-                viewHolder.setEditable(true);
+                startEditing(viewHolder);
                 return true;
             }
+        }
+    }
 
-            private void doEndOfEditing() {
-                currentEditing.setEditable(false);
-                callback.onChanged(currentEditing);
-                currentEditing = null;
+    private void startPull() {
+        pullState = PULL_STATE_ADD;
+        pullText = 0;
+        pullHeader.reset();
+        pullHeader.setBackgroundPinned(true);
+        pullHeader.itemView.setPivotY(pullHeader.itemView.getHeight());
+        pullHeader.itemView.setVisibility(View.VISIBLE);
+        updatePull();
+    }
+
+    /**
+     * Follows the finger with transformations only, nothing is laid out until the pull is released.
+     */
+    private void updatePull() {
+        final View headerView = pullHeader.itemView;
+        final int height = headerView.getHeight();
+        final float offset = Math.max(0, dy);
+        recyclerView.setTranslationY(offset);
+        headerView.setTranslationY(offset - height);
+        boolean hintPanelVisible = false;
+        if (offset < height) {
+            setPullText(R.string.pull_to_create_item);
+            headerView.setRotationX((float) (90 - Math.toDegrees(Math.asin(offset / height))));
+        } else {
+            setPullText(R.string.release_to_create_item);
+            headerView.setRotationX(0);
+            if (callback.canDismissed()) {
+                final int actionBaseline = height * 2;
+                if (offset > actionBaseline) {
+                    hintPanelVisible = true;
+                }
+                if (pullState == PULL_STATE_ADD && offset > actionBaseline) {
+                    pullState = PULL_STATE_CANCEL_ADD;
+                } else if (pullState == PULL_STATE_CANCEL_ADD && offset < actionBaseline) {
+                    pullState = PULL_STATE_ADD;
+                }
             }
         }
+        pullHeader.setHintPanelVisible(hintPanelVisible);
+    }
 
-        private class DismissAnimationListener implements Animation.AnimationListener {
-            private final ItemViewHolder itemViewHolder;
+    private void setPullText(@StringRes int text) {
+        if (pullText != text) {
+            pullText = text;
+            pullHeader.setText(recyclerView.getContext().getString(text));
+        }
+    }
 
-            public DismissAnimationListener(ItemViewHolder itemViewHolder) {
-                this.itemViewHolder = itemViewHolder;
-            }
+    private void endPull() {
+        pullHeader.setHintPanelVisible(false);
+        if (pullState == PULL_STATE_CANCEL_ADD) {
+            hidePullHeader();
+            recyclerView.setVisibility(View.INVISIBLE);
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    callback.onExit();
+                }
+            });
+        } else if (dy < logicalDensity * ADD_THRESHOLD) {
+            hidePullHeader();
+        } else {
+            // The header stands in for the new row until it has been written and bound, see
+            // OnFirstItemUpdateListener. Animating the insert would move the rows below it twice.
+            final View headerView = pullHeader.itemView;
+            headerView.setRotationX(0);
+            headerView.setTranslationY(0);
+            recyclerView.setTranslationY(headerView.getHeight());
+            pullHeader.setText("");
+            pullText = 0;
+            pausedItemAnimator = recyclerView.getItemAnimator();
+            recyclerView.setItemAnimator(null);
+            addPending = true;
+            handler.postDelayed(addTimeoutRunnable, ADD_TIMEOUT);
+            callback.onAdded();
+        }
+    }
 
-            @Override
-            public void onAnimationStart(Animation animation) {
-            }
+    private void hidePullHeader() {
+        final View headerView = pullHeader.itemView;
+        headerView.setVisibility(View.INVISIBLE);
+        headerView.setRotationX(0);
+        headerView.setTranslationY(0);
+        recyclerView.setTranslationY(0);
+    }
 
+    private void finishAdd() {
+        if (!addPending) {
+            return;
+        }
+        addPending = false;
+        handler.removeCallbacks(addTimeoutRunnable);
+        hidePullHeader();
+        final RecyclerView.ItemAnimator itemAnimator = pausedItemAnimator;
+        pausedItemAnimator = null;
+        // Not during the layout which binds the new row, its changes must not be animated. The view is captured,
+        // the field is cleared before the post runs when the add ends on detach.
+        final RecyclerView recyclerView = this.recyclerView;
+        recyclerView.post(new Runnable() {
             @Override
-            public void onAnimationEnd(Animation animation) {
-                callback.onDismissed(itemViewHolder);
-                ViewCompat.setHasTransientState(itemViewHolder.itemView, false);
+            public void run() {
+                recyclerView.setItemAnimator(itemAnimator);
             }
+        });
+    }
 
-            @Override
-            public void onAnimationRepeat(Animation animation) {
-            }
-        }
+    private void startEditing(ItemViewHolder viewHolder) {
+        inlineEditor.begin(viewHolder);
+    }
 
-        private class CompleteAnimationListener implements Animation.AnimationListener {
-            private final ItemViewHolder itemViewHolder;
+    private class OnDragCanceledListener implements CommonAdapter.OnDragCanceledListener {
 
-            public CompleteAnimationListener(ItemViewHolder itemViewHolder) {
-                this.itemViewHolder = itemViewHolder;
+        @Override
+        public void onDragCanceled() {
+            if (actionState != ACTION_STATE_DRAG) {
+                return;
             }
-
-            @Override
-            public void onAnimationStart(Animation animation) {
+            if (selected != null) {
+                ViewCompat.setTranslationY(selected.itemView, 0);
+                selected.setBackgroundPinned(false);
             }
+            selected = null;
+            actionState = ACTION_STATE_IDLE;
+            recyclerView.getParent().requestDisallowInterceptTouchEvent(false);
+            recyclerView.invalidate();
+        }
+    }
 
-            @Override
-            public void onAnimationEnd(Animation animation) {
-                callback.onCompleted(itemViewHolder);
-                ViewCompat.setHasTransientState(itemViewHolder.itemView, false);
-            }
+    /**
+     * Draws the dragged row on top of the rows it is dragged over.
+     */
+    private class DragDrawingOrderCallback implements RecyclerView.ChildDrawingOrderCallback {
 
-            @Override
-            public void onAnimationRepeat(Animation animation) {
+        @Override
+        public int onGetChildDrawingOrder(int childCount, int i) {
+            if (actionState != ACTION_STATE_DRAG || selected == null) {
+                return i;
             }
+            final int selectedIndex = recyclerView.indexOfChild(selected.itemView);
+            if (selectedIndex < 0) {
+                return i;
+            }
+            if (i == childCount - 1) {
+                return selectedIndex;
+            }
+            return i < selectedIndex ? i : i + 1;
         }
     }
 
@@ -554,9 +750,20 @@ public class TouchHelper {
 
         @Override
         public void updated(ViewHolder viewHolder) {
-            if (actionState == ACTION_STATE_PULL) {
-                selected = (ItemViewHolder) viewHolder;
+            if (!addPending || !adapter.isLastAdded(0)) {
+                return;
             }
+            finishAdd();
+            final ItemViewHolder itemViewHolder = (ItemViewHolder) viewHolder;
+            // Called while the row is being bound, focus and the keyboard have to wait for the layout.
+            handler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (recyclerView != null && itemViewHolder.getAdapterPosition() == 0) {
+                        startEditing(itemViewHolder);
+                    }
+                }
+            });
         }
     }
 }
@@ -22,7 +22,7 @@ public interface TouchHelperAdapter {
     void onItemCompleted(int position);
     void onItemDismissed(int position);
     void onItemMoved(int fromPosition, int toPosition);
-    void onItemChanged(ItemViewHolder viewHolder);
-    void onItemReverted();
+    void onItemChanged(String id, String text);
+    void onItemRestored();
     int generatedRowColor(int row);
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.realm.realmtasks.model;
+
+import java.util.Date;
+
+import io.realm.RealmObject;
+import io.realm.annotations.Index;
+import io.realm.annotations.PrimaryKey;
+import io.realm.annotations.Required;
+
+/**
+ * A completed {@link Task} which has been moved out of the synced Realm. It remembers its list so it can be restored.
+ */
+public class ArchivedTask extends RealmObject {
+
+    public static final String FIELD_ID = "id";
+    public static final String FIELD_TASK_LIST_ID = "taskListId";
+    public static final String FIELD_COMPLETED_AT = "completedAt";
+
+    @PrimaryKey @Required
+    private String id;
+    @Required
+    private String text;
+    private Date date;
+    @Index
+    private Date completedAt;
+    private String sortKey;
+    @Index
+    private String taskListId;
+    private String taskListText;
+    private Date archivedAt;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Date completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    public String getTaskListId() {
+        return taskListId;
+    }
+
+    public void setTaskListId(String taskListId) {
+        this.taskListId = taskListId;
+    }
+
+    public String getTaskListText() {
+        return taskListText;
+    }
+
+    public void setTaskListText(String taskListText) {
+        this.taskListText = taskListText;
+    }
+
+    public Date getArchivedAt() {
+        return archivedAt;
+    }
+
+    public void setArchivedAt(Date archivedAt) {
+        this.archivedAt = archivedAt;
+    }
+}
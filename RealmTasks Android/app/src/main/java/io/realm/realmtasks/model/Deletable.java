@@ -0,0 +1,34 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.model;
+
+import java.util.Date;
+
+/**
+ * Dismissed items are only marked as deleted at first, so they can be restored for a while.
+ * See {@link io.realm.realmtasks.data.TombstonePurger}.
+ */
+public interface Deletable {
+
+    String FIELD_DELETED = "deleted";
+    String FIELD_DELETED_AT = "deletedAt";
+
+    boolean isDeleted();
+    void setDeleted(boolean deleted);
+    Date getDeletedAt();
+    void setDeletedAt(Date deletedAt);
+}
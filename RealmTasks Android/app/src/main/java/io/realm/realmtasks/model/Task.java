@@ -19,18 +19,47 @@ package io.realm.realmtasks.model;
 import java.util.Date;
 
 import io.realm.RealmObject;
+import io.realm.RealmResults;
+import io.realm.annotations.Index;
+import io.realm.annotations.LinkingObjects;
 import io.realm.annotations.Required;
 
-public class Task extends RealmObject implements Completable {
+public class Task extends RealmObject implements Completable, Sortable, Deletable {
 
+    public static final String FIELD_ID = "id";
     public static final String FIELD_TEXT = "text";
     public static final String FIELD_COMPLETED = "completed";
     public static final String FIELD_DATE = "date";
+    public static final String FIELD_COMPLETED_AT = "completedAt";
+    public static final String FIELD_LISTS = "lists";
 
+    // Not a primary key, those can't be added to a class which is already synced. Tasks created by clients which
+    // don't set it get one from the SyncRepairer.
+    @Index
+    private String id;
     @Required
     private String text;
+    // Indexed, the app, the server function and the agenda filter and sort on these.
+    @Index
     private boolean completed;
+    @Index
     private Date date;
+    // When the task was completed, used to archive old completed tasks.
+    private Date completedAt;
+    private String sortKey;
+    @Index
+    private boolean deleted;
+    private Date deletedAt;
+    @LinkingObjects(TaskList.FIELD_ITEMS)
+    private final RealmResults<TaskList> lists = null;
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
 
     public String getText() {
         return text;
@@ -56,6 +85,48 @@ public class Task extends RealmObject implements Completable {
         this.date = date;
     }
 
+    public Date getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Date completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    @Override
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    @Override
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    @Override
+    public Date getDeletedAt() {
+        return deletedAt;
+    }
+
+    @Override
+    public void setDeletedAt(Date deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public RealmResults<TaskList> getLists() {
+        return lists;
+    }
+
     @Override
     public boolean isCompletable() {
         return true;
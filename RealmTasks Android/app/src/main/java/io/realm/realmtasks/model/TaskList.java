@@ -16,16 +16,23 @@
 
 package io.realm.realmtasks.model;
 
+import java.util.Date;
+
 import io.realm.RealmList;
 import io.realm.RealmObject;
+import io.realm.annotations.Index;
 import io.realm.annotations.PrimaryKey;
 import io.realm.annotations.Required;
 
-public class TaskList extends RealmObject implements Completable {
+public class TaskList extends RealmObject implements Completable, Sortable, Deletable {
 
     public static final String FIELD_ID = "id";
     public static final String FIELD_TEXT = "text";
     public static final String FIELD_COMPLETED = "completed";
+    public static final String FIELD_ITEMS = "items";
+    public static final String FIELD_INCOMPLETE_COUNT = "incompleteCount";
+    public static final String FIELD_TOTAL_COUNT = "totalCount";
+    public static final String FIELD_OLDEST_OPEN_DATE = "oldestOpenDate";
 
     @PrimaryKey @Required
     private String id;
@@ -33,6 +40,14 @@ public class TaskList extends RealmObject implements Completable {
     private String text;
     private boolean completed;
     private RealmList<Task> items;
+    private String sortKey;
+    @Index
+    private boolean deleted;
+    private Date deletedAt;
+    // Aggregates over items, kept up to date by TaskListCounters.
+    private long incompleteCount;
+    private long totalCount;
+    private Date oldestOpenDate;
 
     public String getText() {
         return text;
@@ -66,6 +81,60 @@ public class TaskList extends RealmObject implements Completable {
         this.items = items;
     }
 
+    @Override
+    public String getSortKey() {
+        return sortKey;
+    }
+
+    @Override
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    @Override
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    @Override
+    public void setDeleted(boolean deleted) {
+        this.deleted = deleted;
+    }
+
+    @Override
+    public Date getDeletedAt() {
+        return deletedAt;
+    }
+
+    @Override
+    public void setDeletedAt(Date deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public long getIncompleteCount() {
+        return incompleteCount;
+    }
+
+    public void setIncompleteCount(long incompleteCount) {
+        this.incompleteCount = incompleteCount;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public void setTotalCount(long totalCount) {
+        this.totalCount = totalCount;
+    }
+
+    public Date getOldestOpenDate() {
+        return oldestOpenDate;
+    }
+
+    public void setOldestOpenDate(Date oldestOpenDate) {
+        this.oldestOpenDate = oldestOpenDate;
+    }
+
     @Override
     public boolean isCompletable() {
         return !getItems().isEmpty();
@@ -19,14 +19,26 @@ package io.realm.realmtasks.view;
 import android.animation.Animator;
 import android.animation.AnimatorListenerAdapter;
 import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.v4.content.ContextCompat;
 import android.support.v7.widget.RecyclerView;
 import android.util.AttributeSet;
 import android.view.View;
 
+import io.realm.realmtasks.R;
+
+/**
+ * Shows the empty view when the adapter has no items. Until an adapter is set, i.e. while the data is still being
+ * loaded, skeleton rows are drawn instead and the empty view is hidden.
+ */
 public class RecyclerViewWithEmptyViewSupport extends RecyclerView {
     private int mMediumAnimationDuration;
     private int mShortAnimationDuration;
     private View emptyView;
+    private final Paint skeletonPaint = new Paint();
+    private int skeletonRowHeight;
+    private int skeletonRowGap;
 
     private AdapterDataObserver emptyObserver = new AdapterDataObserver() {
         @Override
@@ -61,26 +73,62 @@ public class RecyclerViewWithEmptyViewSupport extends RecyclerView {
                 }
             }
         }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            onChanged();
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            onChanged();
+        }
     };
 
     public RecyclerViewWithEmptyViewSupport(Context context) {
         super(context);
-        // Retrieve and cache the system's default "short" animation time.
-        // Retrieve and cache the system's default "short" animation time.
-        mShortAnimationDuration = getResources().getInteger(android.R.integer.config_shortAnimTime);
-        mMediumAnimationDuration = getResources().getInteger(android.R.integer.config_mediumAnimTime);
+        init();
     }
 
     public RecyclerViewWithEmptyViewSupport(Context context, AttributeSet attrs) {
         super(context, attrs);
+        init();
     }
 
     public RecyclerViewWithEmptyViewSupport(Context context, AttributeSet attrs, int defStyle) {
         super(context, attrs, defStyle);
+        init();
+    }
+
+    private void init() {
+        // Retrieve and cache the system's default "short" animation time.
+        mShortAnimationDuration = getResources().getInteger(android.R.integer.config_shortAnimTime);
+        mMediumAnimationDuration = getResources().getInteger(android.R.integer.config_mediumAnimTime);
+        skeletonPaint.setColor(ContextCompat.getColor(getContext(), R.color.skeleton_row_color));
+        skeletonRowHeight = getResources().getDimensionPixelSize(R.dimen.row_min_height);
+        skeletonRowGap = getResources().getDimensionPixelSize(R.dimen.skeleton_row_gap);
+        setWillNotDraw(false);
+    }
+
+    @Override
+    public void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (getAdapter() != null) {
+            return;
+        }
+        final int width = getWidth();
+        final int height = getHeight();
+        for (int top = getPaddingTop(); top < height; top += skeletonRowHeight + skeletonRowGap) {
+            canvas.drawRect(0, top, width, top + skeletonRowHeight, skeletonPaint);
+        }
     }
 
     @Override
     public void setAdapter(Adapter adapter) {
+        final Adapter previous = getAdapter();
+        if (previous != null) {
+            previous.unregisterAdapterDataObserver(emptyObserver);
+        }
         super.setAdapter(adapter);
 
         if(adapter != null) {
@@ -92,5 +140,8 @@ public class RecyclerViewWithEmptyViewSupport extends RecyclerView {
 
     public void setEmptyView(View emptyView) {
         this.emptyView = emptyView;
+        if (getAdapter() == null) {
+            emptyView.setVisibility(View.GONE);
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,403 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.support.annotation.ColorInt;
+import android.support.v4.content.ContextCompat;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.AttributeSet;
+import android.view.View;
+
+import java.util.List;
+
+import io.realm.realmtasks.R;
+
+/**
+ * Read-only content of a list row in a single view: the title, the metadata below it and the badge on the right.
+ * Text layouts come from the {@link TextLayoutCache} and are only looked up again when the text or the width changes,
+ * a change which keeps the height of the row only redraws it. Replaces a hierarchy of nested layouts and text views which had
+ * to be measured for every bind.
+ * <p>
+ * A range of the title can be struck through by drawing the line directly, so it can follow a swipe frame by frame.
+ * The texts it draws are its content description, accessibility services read the row like the text views it
+ * replaces.
+ */
+public class RowView extends View {
+
+    // Relative to the text size, close to what the paint flag draws.
+    private static final float STRIKE_OFFSET = 0.3f;
+    private static final float STRIKE_WIDTH = 1f / 18;
+
+    private final TextPaint textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint metadataPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final TextPaint badgeTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint badgePaint = new Paint();
+    private final Paint strikePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint placeholderPaint = new Paint();
+    private final int textPadding;
+    private final int textMarginLeft;
+    private final int metadataPaddingTop;
+    private final int badgeWidth;
+    private final int defaultTextMarginRight;
+    private int textMarginRight;
+
+    private CharSequence text = "";
+    private CharSequence metadata;
+    private String badge;
+    private float badgeTextWidth;
+    private boolean textVisible = true;
+    private boolean placeholder;
+    private int strikeStart;
+    private int strikeEnd;
+
+    private Layout textLayout;
+    private Layout metadataLayout;
+
+    public RowView(Context context) {
+        this(context, null);
+    }
+
+    public RowView(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public RowView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        final Resources resources = context.getResources();
+        final float density = resources.getDisplayMetrics().density;
+        textPadding = resources.getDimensionPixelSize(R.dimen.row_text_padding);
+        textMarginLeft = resources.getDimensionPixelSize(R.dimen.row_text_margin_left);
+        defaultTextMarginRight = resources.getDimensionPixelSize(R.dimen.row_text_margin_right);
+        textMarginRight = defaultTextMarginRight;
+        metadataPaddingTop = resources.getDimensionPixelSize(R.dimen.row_metadata_padding_top);
+        badgeWidth = resources.getDimensionPixelSize(R.dimen.row_badge_width);
+        textPaint.density = density;
+        textPaint.setTextSize(resources.getDimension(R.dimen.row_text_size));
+        textPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+        metadataPaint.density = density;
+        metadataPaint.setTextSize(resources.getDimension(R.dimen.row_metadata_text_size));
+        metadataPaint.setColor(ContextCompat.getColor(context, R.color.cell_default_metadata_color));
+        badgeTextPaint.density = density;
+        badgeTextPaint.setTextSize(resources.getDimension(R.dimen.row_text_size));
+        badgeTextPaint.setColor(ContextCompat.getColor(context, android.R.color.white));
+        badgePaint.setColor(ContextCompat.getColor(context, R.color.badge_background_color));
+        strikePaint.setStrokeWidth(Math.max(1f, textPaint.getTextSize() * STRIKE_WIDTH));
+        placeholderPaint.setColor(ContextCompat.getColor(context, R.color.skeleton_row_color));
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public void setText(CharSequence text) {
+        if (text == null) {
+            text = "";
+        }
+        if (TextUtils.equals(this.text, text)) {
+            return;
+        }
+        this.text = text;
+        textLayout = relayout(textLayout, text, textPaint);
+        updateContentDescription();
+    }
+
+    /**
+     * Hides the title but keeps its space, e.g. while an editor is drawn on top of it.
+     */
+    public void setTextVisible(boolean visible) {
+        if (textVisible != visible) {
+            textVisible = visible;
+            invalidate();
+        }
+    }
+
+    /**
+     * A placeholder row only uses text layouts which are cached already and draws a bar one line high instead of the
+     * others, so binding it never lays out text. Used while flinging through long lists.
+     */
+    public void setPlaceholder(boolean placeholder) {
+        if (this.placeholder == placeholder) {
+            return;
+        }
+        this.placeholder = placeholder;
+        if (!placeholder && (textLayout == null || (metadata != null && metadataLayout == null))) {
+            textLayout = null;
+            metadataLayout = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public boolean isPlaceholder() {
+        return placeholder;
+    }
+
+    private void updateContentDescription() {
+        final StringBuilder description = new StringBuilder(text);
+        if (metadata != null) {
+            description.append(", ").append(metadata);
+        }
+        if (badge != null) {
+            description.append(", ").append(badge);
+        }
+        setContentDescription(description);
+    }
+
+    public void setTextColor(@ColorInt int color) {
+        if (textPaint.getColor() != color) {
+            textPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * Strikes through all of the title and the metadata, as for completed items.
+     */
+    public void setStruckThrough(boolean struckThrough) {
+        if (textPaint.isStrikeThruText() != struckThrough) {
+            textPaint.setStrikeThruText(struckThrough);
+            metadataPaint.setStrikeThruText(struckThrough);
+            invalidate();
+        }
+    }
+
+    public void setStrikeThrough(int start, int end) {
+        if (start == strikeStart && end == strikeEnd) {
+            return;
+        }
+        strikeStart = start;
+        strikeEnd = end;
+        invalidate();
+    }
+
+    public void clearStrikeThrough() {
+        setStrikeThrough(0, 0);
+    }
+
+    /**
+     * Sets the line below the title, it is removed for an empty value.
+     */
+    public void setMetadata(CharSequence metadata) {
+        if (TextUtils.isEmpty(metadata)) {
+            metadata = null;
+        }
+        if (TextUtils.equals(this.metadata, metadata)) {
+            return;
+        }
+        this.metadata = metadata;
+        metadataLayout = relayout(metadataLayout, metadata, metadataPaint);
+        updateContentDescription();
+    }
+
+    public void setMetadataColor(@ColorInt int color) {
+        if (metadataPaint.getColor() != color) {
+            metadataPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * Shows the badge with the given text, {@code null} removes it.
+     */
+    public void setBadge(String badge) {
+        if (TextUtils.equals(this.badge, badge)) {
+            return;
+        }
+        this.badge = badge;
+        badgeTextWidth = badge != null ? badgeTextPaint.measureText(badge) : 0;
+        invalidate();
+        updateContentDescription();
+    }
+
+    public void setBadgeTextColor(@ColorInt int color) {
+        if (badgeTextPaint.getColor() != color) {
+            badgeTextPaint.setColor(color);
+            invalidate();
+        }
+    }
+
+    /**
+     * Returns the width of the badge, 0 if there is none.
+     */
+    public int getBadgeWidth() {
+        return badge != null ? badgeWidth : 0;
+    }
+
+    public int getTextMarginRight() {
+        return textMarginRight;
+    }
+
+    /**
+     * Returns the right margin from the resources, which leaves room for the badge.
+     */
+    public int getDefaultTextMarginRight() {
+        return defaultTextMarginRight;
+    }
+
+    /**
+     * The default right margin leaves room for the badge, rows without one can use more of the width.
+     */
+    public void setTextMarginRight(int margin) {
+        if (textMarginRight != margin) {
+            textMarginRight = margin;
+            textLayout = null;
+            metadataLayout = null;
+            requestLayout();
+        }
+    }
+
+    public int getTextLeft() {
+        return textMarginLeft;
+    }
+
+    public int getTextTop() {
+        return textPadding;
+    }
+
+    public int getTextWidth() {
+        return Math.max(0, getWidth() - textMarginLeft - textMarginRight);
+    }
+
+    public float getTextSize() {
+        return textPaint.getTextSize();
+    }
+
+    /**
+     * Lays the changed text out right away if the width is known. The row is only laid out again if its height changed.
+     */
+    private Layout relayout(Layout previous, CharSequence value, TextPaint paint) {
+        final int width = getTextWidth();
+        if (width == 0) {
+            requestLayout();
+            return null;
+        }
+        final Layout layout = value != null ? createLayout(value, paint, width) : null;
+        if (height(layout) != height(previous)) {
+            requestLayout();
+        }
+        invalidate();
+        return layout;
+    }
+
+    private Layout createLayout(CharSequence value, TextPaint paint, int width) {
+        final TextLayoutCache cache = TextLayoutCache.getInstance();
+        return placeholder ? cache.peek(value, paint, width) : cache.get(value, paint, width);
+    }
+
+    /**
+     * Lays out titles of other items in the background, as they would be laid out in this row.
+     */
+    public void prefetch(List<String> texts) {
+        prefetch(texts, null);
+    }
+
+    /**
+     * Same as {@link #prefetch(List)}, {@code onDone} is called on the main thread once the titles are laid out.
+     */
+    public void prefetch(List<String> texts, Runnable onDone) {
+        final int width = getTextWidth();
+        if (width > 0 && !texts.isEmpty()) {
+            TextLayoutCache.getInstance().prefetch(texts, textPaint, width, onDone);
+        } else if (onDone != null) {
+            onDone.run();
+        }
+    }
+
+    private static int height(Layout layout) {
+        return layout != null ? layout.getHeight() : -1;
+    }
+
+    private int textHeight() {
+        return textLayout != null ? textLayout.getHeight() : textPaint.getFontMetricsInt(null);
+    }
+
+    private void ensureLayouts(int viewWidth) {
+        final int width = Math.max(0, viewWidth - textMarginLeft - textMarginRight);
+        if (textLayout == null || textLayout.getWidth() != width) {
+            textLayout = createLayout(text, textPaint, width);
+        }
+        if (metadata == null || textLayout == null) {
+            metadataLayout = null;
+        } else if (metadataLayout == null || metadataLayout.getWidth() != width) {
+            metadataLayout = createLayout(metadata, metadataPaint, width);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = MeasureSpec.getSize(widthMeasureSpec);
+        ensureLayouts(width);
+        int height = textPadding + textHeight() + textPadding;
+        if (metadataLayout != null) {
+            height += metadataPaddingTop + metadataLayout.getHeight();
+        }
+        height = Math.max(height, getSuggestedMinimumHeight());
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        ensureLayouts(getWidth());
+        if (badge != null) {
+            final int left = getWidth() - badgeWidth;
+            canvas.drawRect(left, 0, getWidth(), getHeight(), badgePaint);
+            final float baseline = (getHeight() - badgeTextPaint.descent() - badgeTextPaint.ascent()) / 2;
+            canvas.drawText(badge, left + (badgeWidth - badgeTextWidth) / 2, baseline, badgeTextPaint);
+        }
+        canvas.save();
+        canvas.translate(textMarginLeft, textPadding);
+        if (textLayout == null) {
+            final int lineHeight = textHeight();
+            canvas.drawRect(0, lineHeight / 4, getTextWidth() / 2, lineHeight * 3 / 4, placeholderPaint);
+        } else if (textVisible) {
+            TextLayoutCache.draw(canvas, textLayout, textPaint);
+            drawStrikeThrough(canvas);
+        }
+        if (metadataLayout != null) {
+            canvas.translate(0, textLayout.getHeight() + metadataPaddingTop);
+            TextLayoutCache.draw(canvas, metadataLayout, metadataPaint);
+        }
+        canvas.restore();
+    }
+
+    private void drawStrikeThrough(Canvas canvas) {
+        final int end = Math.min(strikeEnd, text.length());
+        if (strikeStart >= end) {
+            return;
+        }
+        final Layout layout = textLayout;
+        final float offset = textPaint.getTextSize() * STRIKE_OFFSET;
+        strikePaint.setColor(textPaint.getColor());
+        for (int line = layout.getLineForOffset(strikeStart); line < layout.getLineCount(); line++) {
+            final int start = Math.max(strikeStart, layout.getLineStart(line));
+            if (start >= end) {
+                break;
+            }
+            final int lineEnd = layout.getLineEnd(line);
+            final float left = layout.getPrimaryHorizontal(start);
+            final float right = end >= lineEnd ? layout.getLineRight(line) : layout.getPrimaryHorizontal(end);
+            final float y = layout.getLineBaseline(line) - offset;
+            canvas.drawLine(left, y, right, y, strikePaint);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.view;
+
+import android.graphics.Canvas;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import java.util.List;
+
+/**
+ * Process wide cache of the text layouts of rows, keyed by text, width and text style. A layout which isn't cached is
+ * built on the UI thread when a row needs it, {@link #prefetch} builds them ahead of time on a background thread.
+ * <p>
+ * Every cached layout has a paint of its own. Rows copy their current paint into it before drawing, so rows which
+ * only differ in color or strike-through share the layout.
+ */
+public class TextLayoutCache {
+
+    private static final int MAX_SIZE = 300;
+
+    private static TextLayoutCache instance;
+
+    private final LruCache<Key, Layout> layouts = new LruCache<>(MAX_SIZE);
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private TextLayoutCache() {
+        final HandlerThread thread = new HandlerThread("TextLayoutCache", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    public static synchronized TextLayoutCache getInstance() {
+        if (instance == null) {
+            instance = new TextLayoutCache();
+        }
+        return instance;
+    }
+
+    public Layout get(CharSequence text, TextPaint paint, int width) {
+        final Key key = new Key(text.toString(), width, paint);
+        Layout layout = layouts.get(key);
+        if (layout == null) {
+            layout = create(text, paint, width);
+            layouts.put(key, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the cached layout, or {@code null} instead of laying the text out.
+     */
+    public Layout peek(CharSequence text, TextPaint paint, int width) {
+        return layouts.get(new Key(text.toString(), width, paint));
+    }
+
+    /**
+     * Lays out the texts on the background thread unless they are cached already.
+     */
+    public void prefetch(List<String> texts, TextPaint paint, int width) {
+        prefetch(texts, paint, width, null);
+    }
+
+    /**
+     * Same as {@link #prefetch(List, TextPaint, int)}, {@code onDone} is called on the main thread once all texts are
+     * laid out.
+     */
+    public void prefetch(final List<String> texts, TextPaint paint, final int width, final Runnable onDone) {
+        // The caller keeps changing its paint, the background thread only reads this copy.
+        final TextPaint style = new TextPaint(paint);
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (String text : texts) {
+                    final Key key = new Key(text, width, style);
+                    if (layouts.get(key) == null) {
+                        layouts.put(key, create(text, style, width));
+                    }
+                }
+                if (onDone != null) {
+                    mainHandler.post(onDone);
+                }
+            }
+        });
+    }
+
+    /**
+     * Draws the layout with the given paint instead of the one it has been laid out with. UI thread only.
+     */
+    public static void draw(Canvas canvas, Layout layout, TextPaint paint) {
+        layout.getPaint().set(paint);
+        layout.draw(canvas);
+    }
+
+    private static Layout create(CharSequence text, TextPaint paint, int width) {
+        return new StaticLayout(text, new TextPaint(paint), width, Layout.Alignment.ALIGN_NORMAL, 1f, 0f, true);
+    }
+
+    private static class Key {
+        private final String text;
+        private final int width;
+        private final float textSize;
+        private final Typeface typeface;
+
+        Key(String text, int width, TextPaint paint) {
+            this.text = text;
+            this.width = width;
+            this.textSize = paint.getTextSize();
+            this.typeface = paint.getTypeface();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return width == key.width
+                    && Float.compare(textSize, key.textSize) == 0
+                    && text.equals(key.text)
+                    && (typeface == null ? key.typeface == null : typeface.equals(key.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + width;
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            return result;
+        }
+    }
+}
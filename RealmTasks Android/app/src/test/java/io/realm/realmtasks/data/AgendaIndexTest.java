@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import io.realm.realmtasks.model.Task;
+
+import static io.realm.realmtasks.data.AgendaIndex.LATER;
+import static io.realm.realmtasks.data.AgendaIndex.OVERDUE;
+import static io.realm.realmtasks.data.AgendaIndex.THIS_WEEK;
+import static io.realm.realmtasks.data.AgendaIndex.TODAY;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AgendaIndexTest {
+
+    private static final int[] NONE = new int[0];
+
+    private long now;
+    private AgendaIndex index;
+
+    @Before
+    public void setUp() {
+        final Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.JUNE, 15, 12, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        now = calendar.getTimeInMillis();
+        index = new AgendaIndex();
+        index.setNow(now);
+    }
+
+    @Test
+    public void rebuild_findsSections() {
+        final List<Task> tasks = tasks(-2, -1, 0, 0, 3, 10);
+        index.rebuild(tasks);
+        assertCounts(2, 2, 1, 1);
+        assertEquals(6, index.getSize());
+        assertEquals(OVERDUE, index.sectionAt(1));
+        assertEquals(TODAY, index.sectionAt(2));
+        assertEquals(THIS_WEEK, index.sectionAt(4));
+        assertEquals(LATER, index.sectionAt(5));
+    }
+
+    @Test
+    public void rebuild_emptySections() {
+        index.rebuild(tasks(10, 11));
+        assertCounts(0, 0, 0, 2);
+        index.rebuild(new ArrayList<Task>());
+        assertCounts(0, 0, 0, 0);
+    }
+
+    @Test
+    public void apply_deletionsAcrossBoundaries() {
+        final List<Task> tasks = tasks(-2, -1, 0, 3, 10);
+        index.rebuild(tasks);
+        // Deletes the last overdue and the only task of this week.
+        tasks.remove(3);
+        tasks.remove(1);
+        assertTrue(index.apply(tasks, new int[] {1, 3}, NONE));
+        assertCounts(1, 1, 0, 1);
+    }
+
+    @Test
+    public void apply_deletionsEmptyingSections() {
+        final List<Task> tasks = tasks(-1, 0, 0, 3);
+        index.rebuild(tasks);
+        tasks.subList(0, 3).clear();
+        assertTrue(index.apply(tasks, new int[] {0, 1, 2}, NONE));
+        assertCounts(0, 0, 1, 0);
+        assertEquals(0, index.getFirst(THIS_WEEK));
+    }
+
+    @Test
+    public void apply_insertionsAcrossBoundaries() {
+        final List<Task> tasks = tasks(-1, 3);
+        index.rebuild(tasks);
+        // A task due today lands between the sections, one due later after all of them.
+        tasks.add(1, task(0));
+        tasks.add(task(10));
+        assertTrue(index.apply(tasks, NONE, new int[] {1, 3}));
+        assertCounts(1, 1, 1, 1);
+    }
+
+    @Test
+    public void apply_insertionsIntoEmptyIndex() {
+        final List<Task> tasks = tasks(-1, 0, 3, 10);
+        index.rebuild(new ArrayList<Task>());
+        assertTrue(index.apply(tasks, NONE, new int[] {0, 1, 2, 3}));
+        assertCounts(1, 1, 1, 1);
+    }
+
+    @Test
+    public void apply_deletionsAndInsertions() {
+        final List<Task> tasks = tasks(-1, 0, 3, 10);
+        index.rebuild(tasks);
+        // Deletions are positions in the old results, insertions in the new ones.
+        tasks.remove(1);
+        tasks.remove(0);
+        tasks.add(1, task(4));
+        tasks.add(2, task(5));
+        assertTrue(index.apply(tasks, new int[] {0, 1}, new int[] {1, 2}));
+        assertCounts(0, 0, 3, 1);
+    }
+
+    @Test
+    public void apply_movedTask() {
+        final List<Task> tasks = tasks(-1, 0, 3);
+        index.rebuild(tasks);
+        // Postponing the overdue task is a deletion and an insertion.
+        final Task moved = tasks.remove(0);
+        moved.setDate(date(4));
+        tasks.add(moved);
+        assertTrue(index.apply(tasks, new int[] {0}, new int[] {2}));
+        assertCounts(0, 1, 2, 0);
+    }
+
+    @Test
+    public void apply_inPlaceSectionChangeRebuilds() {
+        final List<Task> tasks = tasks(-1, 0, 3);
+        index.rebuild(tasks);
+        // The task due today becomes overdue, it keeps its position.
+        tasks.get(1).setDate(new Date(tasks.get(0).getDate().getTime() + 1));
+        assertFalse(index.apply(tasks, NONE, NONE));
+        assertCounts(2, 0, 1, 0);
+    }
+
+    @Test
+    public void apply_inPlaceChangeWithinSection() {
+        final List<Task> tasks = tasks(-1, 3, 4);
+        index.rebuild(tasks);
+        tasks.get(1).setDate(new Date(tasks.get(1).getDate().getTime() + 1));
+        assertTrue(index.apply(tasks, NONE, NONE));
+        assertCounts(1, 0, 2, 0);
+    }
+
+    @Test
+    public void setNow_nextDay() {
+        final List<Task> tasks = tasks(0, 1, 7);
+        index.rebuild(tasks);
+        assertCounts(0, 1, 1, 1);
+        index.setNow(now + 24 * 60 * 60 * 1000L);
+        index.rebuild(tasks);
+        assertCounts(1, 1, 1, 0);
+    }
+
+    private void assertCounts(int overdue, int today, int thisWeek, int later) {
+        assertEquals("overdue", overdue, index.getCount(OVERDUE));
+        assertEquals("today", today, index.getCount(TODAY));
+        assertEquals("this week", thisWeek, index.getCount(THIS_WEEK));
+        assertEquals("later", later, index.getCount(LATER));
+    }
+
+    /**
+     * Creates tasks sorted by date, each due the given number of days from now.
+     */
+    private List<Task> tasks(int... days) {
+        final List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < days.length; i++) {
+            final Task task = task(days[i]);
+            // Tasks due on the same day are a minute apart, in the order given.
+            task.setDate(new Date(task.getDate().getTime() + i * 60 * 1000L));
+            tasks.add(task);
+        }
+        return tasks;
+    }
+
+    private Task task(int days) {
+        final Task task = new Task();
+        task.setDate(date(days));
+        return task;
+    }
+
+    private Date date(int days) {
+        return new Date(now + days * 24 * 60 * 60 * 1000L);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchTokenizerTest {
+
+    @Test
+    public void tokenize_nullAndEmpty() {
+        assertEquals(Collections.<String>emptyList(), SearchTokenizer.tokenize(null));
+        assertEquals(Collections.<String>emptyList(), SearchTokenizer.tokenize(""));
+        assertEquals(Collections.<String>emptyList(), SearchTokenizer.tokenize(" -, !"));
+    }
+
+    @Test
+    public void tokenize_splitsOnSeparators() {
+        assertTokens("Buy milk, eggs & bread!", "buy", "milk", "eggs", "bread");
+        assertTokens("  call\tmom\n", "call", "mom");
+        assertTokens("e-mail re:report", "e", "mail", "re", "report");
+    }
+
+    @Test
+    public void tokenize_keepsDigits() {
+        assertTokens("Room 101 at 9:30", "room", "101", "at", "9", "30");
+        assertTokens("mp3", "mp3");
+    }
+
+    @Test
+    public void tokenize_lowerCase() {
+        assertTokens("ReAlM TASKS", "realm", "tasks");
+    }
+
+    @Test
+    public void tokenize_removesAccents() {
+        assertTokens("Caf\u00e9 cr\u00e8me br\u00fbl\u00e9e", "cafe", "creme", "brulee");
+        assertTokens("\u00c4rger \u00fcber \u00d6l", "arger", "uber", "ol");
+    }
+
+    @Test
+    public void tokenize_decomposedAccentsDontSplit() {
+        // An e followed by a combining acute accent.
+        assertTokens("cafe\u0301 au lait", "cafe", "au", "lait");
+    }
+
+    @Test
+    public void tokenize_otherScripts() {
+        assertTokens("\u041f\u0440\u0438\u0432\u0435\u0442 \u043c\u0438\u0440", "\u043f\u0440\u0438\u0432\u0435\u0442", "\u043c\u0438\u0440");
+    }
+
+    @Test
+    public void tokenize_cutsLongTokens() {
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < SearchTokenizer.MAX_TOKEN_LENGTH + 10; i++) {
+            text.append('a');
+        }
+        final List<String> tokens = SearchTokenizer.tokenize(text + " b");
+        assertEquals(2, tokens.size());
+        assertEquals(SearchTokenizer.MAX_TOKEN_LENGTH, tokens.get(0).length());
+        assertEquals("b", tokens.get(1));
+    }
+
+    private static void assertTokens(String text, String... tokens) {
+        assertEquals(Arrays.asList(tokens), SearchTokenizer.tokenize(text));
+    }
+}
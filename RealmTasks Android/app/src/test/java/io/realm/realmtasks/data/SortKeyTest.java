@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Realm Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.realm.realmtasks.data;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.realm.realmtasks.model.Sortable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SortKeyTest {
+
+    @Test
+    public void between_noBounds() {
+        assertValid(SortKey.between(null, null));
+        assertEquals("i", SortKey.between(null, null));
+    }
+
+    @Test
+    public void between_noBefore() {
+        assertBetween(null, "i");
+        assertBetween(null, "1");
+        assertBetween(null, "01");
+        assertBetween(null, "001");
+        assertBetween(null, "0z");
+    }
+
+    @Test
+    public void between_noAfter() {
+        assertBetween("i", null);
+        assertBetween("z", null);
+        assertBetween("zz", null);
+    }
+
+    @Test
+    public void between_emptyKeysAreNoBounds() {
+        assertEquals(SortKey.between(null, null), SortKey.between("", ""));
+        assertEquals(SortKey.between("i", null), SortKey.between("i", ""));
+    }
+
+    @Test
+    public void between_adjacentKeys() {
+        assertBetween("a", "b");
+        assertBetween("a", "a1");
+        assertBetween("a1", "a2");
+        assertBetween("y", "z");
+        assertBetween("az", "b");
+        assertBetween("a0z", "a1");
+    }
+
+    @Test
+    public void between_outOfOrderKeysPlaceAfterBefore() {
+        final String key = SortKey.between("b", "a");
+        assertValid(key);
+        assertTrue(key.compareTo("b") > 0);
+        assertValid(SortKey.between("b", "b"));
+        assertTrue(SortKey.between("b", "b").compareTo("b") > 0);
+    }
+
+    @Test
+    public void between_repeatedInsertsStayOrdered() {
+        String before = "a";
+        String after = "b";
+        for (int i = 0; i < 200; i++) {
+            final String key = assertBetween(before, after);
+            if (i % 2 == 0) {
+                after = key;
+            } else {
+                before = key;
+            }
+        }
+    }
+
+    @Test
+    public void between_repeatedTopInsertsGrowSlowly() {
+        String after = null;
+        for (int i = 0; i < 100; i++) {
+            after = assertBetween(null, after);
+        }
+        // Stepping down adds a digit every 17 inserts, halving would add one every 5.
+        assertTrue(after, after.length() <= 6);
+    }
+
+    @Test
+    public void between_maxLengthCarry() {
+        final String before = repeat('z', SortKey.MAX_LENGTH);
+        final String key = assertBetween(before, null);
+        assertTrue(key.length() > SortKey.MAX_LENGTH);
+        assertTrue(SortKey.needsRepair(Collections.singletonList(new Item(key))));
+
+        final String after = repeat('0', SortKey.MAX_LENGTH - 1) + "1";
+        final String first = assertBetween(null, after);
+        assertTrue(first.length() > SortKey.MAX_LENGTH);
+    }
+
+    @Test
+    public void sequence_ascendingAndValid() {
+        for (int count : new int[] {1, 2, 35, 36, 37, 1000}) {
+            final List<String> keys = SortKey.sequence(count);
+            assertEquals(count, keys.size());
+            for (int i = 0; i < count; i++) {
+                assertValid(keys.get(i));
+                if (i > 0) {
+                    assertTrue(keys.get(i - 1).compareTo(keys.get(i)) < 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void repair_rebalancesLongKeysKeepingOrder() {
+        final List<Item> items = new ArrayList<>();
+        items.add(new Item("b"));
+        items.add(new Item(repeat('z', SortKey.MAX_LENGTH) + "i"));
+        items.add(new Item("a"));
+        SortKey.repair(items);
+        assertFalse(SortKey.needsRepair(items));
+        assertTrue(items.get(2).getSortKey().compareTo(items.get(0).getSortKey()) < 0);
+        assertTrue(items.get(0).getSortKey().compareTo(items.get(1).getSortKey()) < 0);
+    }
+
+    @Test
+    public void needsRepair_duplicateKeys() {
+        final List<Item> items = new ArrayList<>();
+        items.add(new Item("a"));
+        items.add(new Item("b"));
+        assertFalse(SortKey.needsRepair(items));
+        items.add(new Item("a"));
+        assertTrue(SortKey.needsRepair(items));
+    }
+
+    @Test
+    public void repair_rebalancesDuplicateKeysKeepingListOrder() {
+        final List<Item> items = new ArrayList<>();
+        items.add(new Item("c"));
+        items.add(new Item("b"));
+        items.add(new Item("a"));
+        items.add(new Item("b"));
+        SortKey.repair(items);
+        assertFalse(SortKey.needsRepair(items));
+        assertTrue(items.get(2).getSortKey().compareTo(items.get(1).getSortKey()) < 0);
+        // Items with the same key keep the order of the list.
+        assertTrue(items.get(1).getSortKey().compareTo(items.get(3).getSortKey()) < 0);
+        assertTrue(items.get(3).getSortKey().compareTo(items.get(0).getSortKey()) < 0);
+    }
+
+    @Test
+    public void repair_placesItemsWithoutKeyOnTop() {
+        final List<Item> items = new ArrayList<>();
+        items.add(new Item(null));
+        items.add(new Item("i"));
+        items.add(new Item(null));
+        SortKey.repair(items);
+        assertFalse(SortKey.needsRepair(items));
+        assertTrue(items.get(0).getSortKey().compareTo(items.get(2).getSortKey()) < 0);
+        assertTrue(items.get(2).getSortKey().compareTo("i") < 0);
+    }
+
+    private static String assertBetween(String before, String after) {
+        final String key = SortKey.between(before, after);
+        assertValid(key);
+        if (before != null) {
+            assertTrue(key + " > " + before, key.compareTo(before) > 0);
+        }
+        if (after != null) {
+            assertTrue(key + " < " + after, key.compareTo(after) < 0);
+        }
+        return key;
+    }
+
+    private static void assertValid(String key) {
+        assertFalse(key.isEmpty());
+        assertTrue(key, key.matches("[0-9a-z]*[1-9a-z]"));
+    }
+
+    private static String repeat(char c, int count) {
+        final StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static class Item implements Sortable {
+        private String sortKey;
+
+        Item(String sortKey) {
+            this.sortKey = sortKey;
+        }
+
+        @Override
+        public String getSortKey() {
+            return sortKey;
+        }
+
+        @Override
+        public void setSortKey(String sortKey) {
+            this.sortKey = sortKey;
+        }
+    }
+}